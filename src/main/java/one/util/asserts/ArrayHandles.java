@@ -0,0 +1,93 @@
+package one.util.asserts;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Method handles to access and create arrays of a specific class, cached per class.
+ * Unlike {@link java.lang.reflect.Array}, every array class has its own monomorphic handles,
+ * so the JIT does not have to dispatch on the component type for every access.
+ */
+final class ArrayHandles {
+  private static final ClassValue<ArrayHandles> HANDLES = new ClassValue<>() {
+    @Override
+    protected ArrayHandles computeValue(Class<?> arrayClass) {
+      return new ArrayHandles(arrayClass);
+    }
+  };
+
+  private final Class<?> componentType;
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+  private final MethodHandle length;
+  private final MethodHandle constructor;
+
+  private ArrayHandles(Class<?> arrayClass) {
+    componentType = arrayClass.getComponentType();
+    getter = MethodHandles.arrayElementGetter(arrayClass)
+            .asType(MethodType.methodType(Object.class, Object.class, int.class));
+    setter = MethodHandles.arrayElementSetter(arrayClass)
+            .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+    length = MethodHandles.arrayLength(arrayClass).asType(MethodType.methodType(int.class, Object.class));
+    constructor = MethodHandles.arrayConstructor(arrayClass).asType(MethodType.methodType(Object.class, int.class));
+  }
+
+  /**
+   * @param arrayClass array class
+   * @return handles for the array class
+   * @throws IllegalArgumentException if the class is not an array class
+   */
+  static ArrayHandles forClass(Class<?> arrayClass) {
+    if (!arrayClass.isArray()) {
+      throw new IllegalArgumentException("Not an array: " + arrayClass.getName());
+    }
+    return HANDLES.get(arrayClass);
+  }
+
+  /**
+   * @param array array
+   * @param index element index
+   * @return array element, boxed if primitive
+   */
+  Object get(Object array, int index) throws Throwable {
+    return (Object) getter.invokeExact(array, index);
+  }
+
+  /**
+   * @param array array
+   * @return array length
+   */
+  int length(Object array) throws Throwable {
+    return (int) length.invokeExact(array);
+  }
+
+  /**
+   * Creates an array like the {@code new} expression does: nested arrays are created for all the specified
+   * dimensions, the remaining ones are left null
+   *
+   * @param dimensions specified dimensions, no more than the array rank
+   * @return new array
+   */
+  Object newArray(List<Integer> dimensions) throws Throwable {
+    for (int dimension : dimensions) {
+      if (dimension < 0) {
+        throw new NegativeArraySizeException(String.valueOf(dimension));
+      }
+    }
+    return newArray(dimensions, 0);
+  }
+
+  private Object newArray(List<Integer> dimensions, int depth) throws Throwable {
+    int size = dimensions.get(depth);
+    Object array = (Object) constructor.invokeExact(size);
+    if (depth + 1 < dimensions.size()) {
+      ArrayHandles component = forClass(componentType);
+      for (int i = 0; i < size; i++) {
+        setter.invokeExact(array, i, component.newArray(dimensions, depth + 1));
+      }
+    }
+    return array;
+  }
+}
@@ -0,0 +1,282 @@
+package one.util.asserts;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.code.Location;
+import java.lang.reflect.code.Op;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Per-site assertion metrics. Assertion site is identified by the nest host of the condition lambda and the location
+ * of the lambda in the source ({@code host:line:column}), so the names are stable across runs, and collected metrics
+ * never keep the condition classes reachable. The number of sites
+ * is bounded: once {@value #MAX_SITES} sites are registered, the metrics of new sites are collected under
+ * {@value #OTHER_SITES}.
+ * Counters are striped ({@link LongAdder}), so concurrent assertions don't contend on updates.
+ * <p>
+ * Latencies are collected into log2 histograms: bucket {@code i} counts durations
+ * within {@code [2^(i-1), 2^i)} nanoseconds (bucket 0 counts zero durations).
+ */
+public final class AssertionMetrics {
+  /**
+   * MBean object name
+   */
+  public static final String OBJECT_NAME = "one.util.asserts:type=AssertionMetrics";
+
+  /**
+   * Maximal number of separately tracked sites
+   */
+  public static final int MAX_SITES = 4096;
+  /**
+   * Name of the site which collects the metrics of the sites beyond {@link #MAX_SITES}
+   */
+  public static final String OTHER_SITES = "<other>";
+
+  private static final int BUCKETS = 64;
+
+  private static final Map<String, SiteMetrics> ALL = new ConcurrentHashMap<>();
+  private static final ClassValue<AtomicReference<SiteMetrics>> SITES = new ClassValue<>() {
+    @Override
+    protected AtomicReference<SiteMetrics> computeValue(Class<?> type) {
+      return new AtomicReference<>();
+    }
+  };
+
+  private AssertionMetrics() {
+  }
+
+  /**
+   * Metrics snapshot of a single site
+   *
+   * @param site               site name ({@code host:line:column})
+   * @param evaluations        number of evaluations
+   * @param failures           number of failed evaluations
+   * @param fallbacks          number of evaluations which fell back to the direct condition call
+   * @param cacheHits          number of cache hits
+   * @param cacheMisses        number of cache misses
+   * @param evaluationLatency  evaluation latency histogram
+   * @param formattingLatency  failure message formatting latency histogram; the message is formatted
+   *                           when it's requested, so unrequested messages are not counted
+   */
+  public record SiteSnapshot(String site, long evaluations, long failures, long fallbacks,
+                             long cacheHits, long cacheMisses, long[] evaluationLatency, long[] formattingLatency) {
+  }
+
+  /**
+   * @return snapshot of metrics for all the sites evaluated so far, sorted by site name
+   */
+  public static List<SiteSnapshot> snapshot() {
+    return ALL.values().stream().map(SiteMetrics::snapshot)
+            .sorted(Comparator.comparing(SiteSnapshot::site)).toList();
+  }
+
+  /**
+   * Resets all the collected metrics
+   */
+  public static void reset() {
+    ALL.values().forEach(SiteMetrics::reset);
+  }
+
+  /**
+   * Registers the metrics MBean in the platform MBean server under {@link #OBJECT_NAME}, if not registered yet.
+   */
+  public static void registerMBean() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      if (!server.isRegistered(name)) {
+        server.registerMBean(new MXBeanImpl(), name);
+      }
+    } catch (InstanceAlreadyExistsException _) {
+      // Registered concurrently
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * @param lambdaClass class of the assertion condition
+   * @param root        root op of the quoted condition
+   * @return metrics of the given site
+   */
+  static SiteMetrics forSite(Class<?> lambdaClass, Op root) {
+    AtomicReference<SiteMetrics> ref = SITES.get(lambdaClass);
+    SiteMetrics metrics = ref.get();
+    if (metrics == null) {
+      String name = ALL.size() < MAX_SITES ? siteName(lambdaClass, root) : OTHER_SITES;
+      metrics = ALL.computeIfAbsent(name, SiteMetrics::new);
+      ref.set(metrics);
+    }
+    return metrics;
+  }
+
+  private static String siteName(Class<?> lambdaClass, Op root) {
+    Location location = root.location();
+    String host = lambdaClass.getNestHost().getName();
+    return location == null ? host : host + ":" + location.line() + ":" + location.column();
+  }
+
+  static final class SiteMetrics {
+    private final String site;
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LatencyHistogram evaluationLatency = new LatencyHistogram();
+    private final LatencyHistogram formattingLatency = new LatencyHistogram();
+
+    SiteMetrics(String site) {
+      this.site = site;
+    }
+
+    void evaluated(long nanos, boolean fallback, boolean failed) {
+      evaluations.increment();
+      if (fallback) fallbacks.increment();
+      if (failed) failures.increment();
+      evaluationLatency.record(nanos);
+    }
+
+    void formatted(long nanos) {
+      formattingLatency.record(nanos);
+    }
+
+    void cacheHit() {
+      cacheHits.increment();
+    }
+
+    void cacheMiss() {
+      cacheMisses.increment();
+    }
+
+    SiteSnapshot snapshot() {
+      return new SiteSnapshot(site, evaluations.sum(), failures.sum(), fallbacks.sum(), cacheHits.sum(),
+              cacheMisses.sum(), evaluationLatency.snapshot(), formattingLatency.snapshot());
+    }
+
+    void reset() {
+      evaluations.reset();
+      failures.reset();
+      fallbacks.reset();
+      cacheHits.reset();
+      cacheMisses.reset();
+      evaluationLatency.reset();
+      formattingLatency.reset();
+    }
+  }
+
+  private static final class LatencyHistogram {
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    LatencyHistogram() {
+      for (int i = 0; i < BUCKETS; i++) {
+        buckets[i] = new LongAdder();
+      }
+    }
+
+    void record(long nanos) {
+      buckets[BUCKETS - Long.numberOfLeadingZeros(Math.max(0, nanos))].increment();
+    }
+
+    long[] snapshot() {
+      long[] result = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        result[i] = buckets[i].sum();
+      }
+      return result;
+    }
+
+    void reset() {
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+    }
+  }
+
+  /**
+   * Management interface of the assertion metrics. All the maps are keyed by site name.
+   */
+  public interface AssertionMetricsMXBean {
+    Map<String, Long> getEvaluations();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Long> getFallbacks();
+
+    Map<String, Long> getCacheHits();
+
+    Map<String, Long> getCacheMisses();
+
+    Map<String, long[]> getEvaluationLatency();
+
+    Map<String, long[]> getFormattingLatency();
+
+    void reset();
+  }
+
+  private static final class MXBeanImpl implements AssertionMetricsMXBean {
+    @Override
+    public Map<String, Long> getEvaluations() {
+      return counters(SiteSnapshot::evaluations);
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+      return counters(SiteSnapshot::failures);
+    }
+
+    @Override
+    public Map<String, Long> getFallbacks() {
+      return counters(SiteSnapshot::fallbacks);
+    }
+
+    @Override
+    public Map<String, Long> getCacheHits() {
+      return counters(SiteSnapshot::cacheHits);
+    }
+
+    @Override
+    public Map<String, Long> getCacheMisses() {
+      return counters(SiteSnapshot::cacheMisses);
+    }
+
+    @Override
+    public Map<String, long[]> getEvaluationLatency() {
+      return histograms(SiteSnapshot::evaluationLatency);
+    }
+
+    @Override
+    public Map<String, long[]> getFormattingLatency() {
+      return histograms(SiteSnapshot::formattingLatency);
+    }
+
+    @Override
+    public void reset() {
+      AssertionMetrics.reset();
+    }
+
+    // Site names are unique in the registry, but snapshots are merged anyway,
+    // so a duplicate name could never make the attribute unreadable
+    private static Map<String, Long> counters(ToLongFunction<SiteSnapshot> counter) {
+      return snapshot().stream().collect(Collectors.toMap(SiteSnapshot::site, counter::applyAsLong, Long::sum));
+    }
+
+    private static Map<String, long[]> histograms(Function<SiteSnapshot, long[]> histogram) {
+      return snapshot().stream().collect(Collectors.toMap(SiteSnapshot::site, histogram, (a, b) -> {
+        long[] sum = a.clone();
+        for (int i = 0; i < sum.length; i++) {
+          sum[i] += b[i];
+        }
+        return sum;
+      }));
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package one.util.asserts;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event which covers a single phase of {@link RefAsserts#assertTrue(String, AssertionCondition)}.
+ * When JFR is not recording, the event object is not committed, and JIT is able to eliminate it completely.
+ */
+@Name("one.util.asserts.AssertionPhase")
+@Label("Assertion Phase")
+@Category("Code Reflection Asserts")
+@Description("Phase of the assertion evaluation: model build, interpretation, decompilation, value snapshot or message formatting")
+@StackTrace(false)
+final class AssertionPhaseEvent extends Event {
+  static final String MODEL = "model";
+  static final String INTERPRETATION = "interpretation";
+  static final String DECOMPILATION = "decompilation";
+  /**
+   * Capture of the evaluated values of the failed assertion; the message is not formatted yet
+   */
+  static final String SNAPSHOT = "snapshot";
+  /**
+   * Rendering of the failure message. Happens when the message is requested, possibly in another thread, or never.
+   */
+  static final String FORMATTING = "formatting";
+
+  static final String PASS = "pass";
+  static final String FAIL = "fail";
+  static final String FALLBACK = "fallback";
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Assertion Site")
+  @Description("Class of the assertion condition lambda")
+  Class<?> site;
+
+  @Label("Node Count")
+  int nodeCount;
+
+  @Label("Outcome")
+  String outcome;
+
+  private AssertionPhaseEvent(String phase) {
+    this.phase = phase;
+  }
+
+  static AssertionPhaseEvent start(String phase) {
+    AssertionPhaseEvent event = new AssertionPhaseEvent(phase);
+    event.begin();
+    return event;
+  }
+
+  /**
+   * Commits the already ended event if JFR is recording it
+   *
+   * @param site    class of the assertion condition
+   * @param model   evaluated model
+   * @param outcome assertion outcome
+   */
+  void report(Class<?> site, Node model, String outcome) {
+    if (shouldCommit()) {
+      this.site = site;
+      this.nodeCount = countNodes(model);
+      this.outcome = outcome;
+      commit();
+    }
+  }
+
+  private static int countNodes(Node node) {
+    int count = 1;
+    for (Node child : node.children()) {
+      count += countNodes(child);
+    }
+    return count;
+  }
+}
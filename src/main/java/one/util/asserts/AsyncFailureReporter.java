@@ -0,0 +1,117 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Quoted;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static one.util.asserts.Node.*;
+
+/**
+ * Checks invariants in production code without rendering the failure message on the calling thread.
+ * The failing thread only evaluates the condition, capturing the evaluated trace, and hands it to the
+ * background thread which decompiles and formats it, then passes the message to the sink.
+ * If the background thread cannot keep up and the queue is full, the failure is dropped and counted,
+ * so the calling thread never blocks.
+ * <p>
+ * By default, bounded snapshots of the values are taken at the evaluation time (see {@link CapturePolicy}).
+ */
+public final class AsyncFailureReporter implements AutoCloseable {
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  private final Consumer<String> sink;
+  private final ThreadPoolExecutor executor;
+  private final LongAdder dropped = new LongAdder();
+  private final CapturePolicy policy;
+
+  /**
+   * Creates a reporter with the default queue capacity, which takes value snapshots
+   *
+   * @param sink consumer of the failure messages; called from the background thread
+   */
+  public AsyncFailureReporter(Consumer<String> sink) {
+    this(sink, DEFAULT_CAPACITY, CapturePolicy.SNAPSHOT);
+  }
+
+  /**
+   * @param sink     consumer of the failure messages; called from the background thread
+   * @param capacity maximal number of failures waiting to be rendered
+   * @param policy   how to capture the evaluated values
+   */
+  public AsyncFailureReporter(Consumer<String> sink, int capacity, CapturePolicy policy) {
+    this.sink = Objects.requireNonNull(sink);
+    this.policy = Objects.requireNonNull(policy);
+    this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity),
+            r -> {
+              Thread thread = new Thread(r, "RefAsserts failure reporter");
+              thread.setDaemon(true);
+              return thread;
+            },
+            (_, _) -> dropped.increment());
+  }
+
+  /**
+   * @param condition condition to check
+   * @return true if the condition is satisfied; false if it's not, and the failure is reported to the sink
+   */
+  public boolean check(AssertionCondition condition) {
+    return check(null, condition);
+  }
+
+  /**
+   * @param message   message to prepend to the failure report; null if not necessary
+   * @param condition condition to check
+   * @return true if the condition is satisfied; false if it's not, and the failure is reported to the sink
+   */
+  public boolean check(String message, AssertionCondition condition) {
+    long start = System.nanoTime();
+    Quoted quoted = condition.quoted();
+    AssertionMetrics.SiteMetrics metrics = AssertionMetrics.forSite(condition.getClass(), quoted.op());
+    Node model = Interpreter.buildModel(quoted, Resolver.forClass(condition.getClass()), metrics,
+            ConstantFolder.forSite(condition.getClass(), quoted.op()));
+    // Only the unsupported condition is evaluated directly: the exception thrown by the interpreted one is a failure
+    boolean fallback = model instanceof UnsupportedNode;
+    boolean result = fallback ? condition.getAsBoolean() :
+            model instanceof ValueNode valueNode && Boolean.TRUE.equals(valueNode.value());
+    metrics.evaluated(System.nanoTime() - start, fallback, !result);
+    if (!result) {
+      Node trace = policy == CapturePolicy.SNAPSHOT ? ValueSnapshot.snapshot(model) : model;
+      Class<?> conditionClass = condition.getClass();
+      executor.execute(() -> render(conditionClass, metrics, message, trace));
+    }
+    return result;
+  }
+
+  private void render(Class<?> conditionClass, AssertionMetrics.SiteMetrics metrics, String message, Node model) {
+    String header = Objects.requireNonNullElse(message, "failed");
+    if (model instanceof UnsupportedNode) {
+      sink.accept(header);
+      return;
+    }
+    long start = System.nanoTime();
+    AssertionPhaseEvent formattingEvent = AssertionPhaseEvent.start(AssertionPhaseEvent.FORMATTING);
+    String text = header + "\n" + DefaultAssertionFormatter.DEFAULT.formatAssertion(model);
+    formattingEvent.end();
+    metrics.formatted(System.nanoTime() - start);
+    formattingEvent.report(conditionClass, model, AssertionPhaseEvent.FAIL);
+    sink.accept(text);
+  }
+
+  /**
+   * @return number of failures which were not reported, because the queue was full
+   */
+  public long droppedCount() {
+    return dropped.sum();
+  }
+
+  /**
+   * Stops accepting new failures, and waits for the queued ones to be reported
+   */
+  @Override
+  public void close() {
+    executor.close();
+  }
+}
@@ -0,0 +1,178 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Quoted;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static one.util.asserts.Node.*;
+
+/**
+ * Element-wise assertion over the indexed data or a stream. Elements are tested directly via the predicate
+ * (in parallel, using the common {@link java.util.concurrent.ForkJoinPool} if the indexed input is big enough,
+ * or if the stream is parallel), and only the first {@value #MAX_REPORTED} failing elements are retained
+ * and interpreted to produce the diagnostics.
+ */
+final class BulkAssertion {
+  static final int MAX_REPORTED = 3;
+  private static final int SEQUENTIAL_THRESHOLD = 8192;
+
+  /**
+   * Failing elements found within some range
+   *
+   * @param count   total number of failing elements
+   * @param indices indices of the first failing elements (at most {@value #MAX_REPORTED}), ascending
+   */
+  private record Failures(long count, int[] indices) {
+    static final Failures NONE = new Failures(0, new int[0]);
+
+    Failures merge(Failures next) {
+      if (count == 0) return next;
+      if (next.count == 0) return this;
+      int[] merged = Arrays.copyOf(indices, Math.min(MAX_REPORTED, indices.length + next.indices.length));
+      System.arraycopy(next.indices, 0, merged, indices.length, merged.length - indices.length);
+      return new Failures(count + next.count, merged);
+    }
+  }
+
+  private static final class MatchTask extends RecursiveTask<Failures> {
+    private final IntPredicate matchesAt;
+    private final int from, to;
+
+    MatchTask(IntPredicate matchesAt, int from, int to) {
+      this.matchesAt = matchesAt;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Failures compute() {
+      if (to - from > SEQUENTIAL_THRESHOLD) {
+        int mid = (from + to) >>> 1;
+        MatchTask right = new MatchTask(matchesAt, mid, to);
+        right.fork();
+        Failures left = new MatchTask(matchesAt, from, mid).compute();
+        return left.merge(right.join());
+      }
+      long count = 0;
+      int[] indices = new int[MAX_REPORTED];
+      for (int i = from; i < to; i++) {
+        if (!matches(i)) {
+          if (count < MAX_REPORTED) {
+            indices[(int) count] = i;
+          }
+          count++;
+        }
+      }
+      return count == 0 ? Failures.NONE : new Failures(count, Arrays.copyOf(indices, (int) Math.min(count, MAX_REPORTED)));
+    }
+
+    private boolean matches(int index) {
+      try {
+        return matchesAt.test(index);
+      } catch (RuntimeException _) {
+        // Reported via the diagnostics
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Failing elements found within some part of the stream; mutable container for {@link Stream#collect}
+   */
+  private static final class StreamFailures {
+    private long size;
+    private long count;
+    private final long[] indices = new long[MAX_REPORTED];
+    private final Object[] elements = new Object[MAX_REPORTED];
+
+    <T> void add(T element, Predicate<? super T> predicate) {
+      boolean matches;
+      try {
+        matches = predicate.test(element);
+      } catch (RuntimeException _) {
+        // Reported via the diagnostics
+        matches = false;
+      }
+      if (!matches) {
+        if (count < MAX_REPORTED) {
+          indices[(int) count] = size;
+          elements[(int) count] = element;
+        }
+        count++;
+      }
+      size++;
+    }
+
+    void addAll(StreamFailures next) {
+      for (int i = 0; i < next.count && count + i < MAX_REPORTED; i++) {
+        indices[(int) count + i] = size + next.indices[i];
+        elements[(int) count + i] = next.elements[i];
+      }
+      count += next.count;
+      size += next.size;
+    }
+  }
+
+  /**
+   * Checks that all the elements match the predicate
+   *
+   * @param size      number of elements
+   * @param matchesAt predicate which tests the element at given index
+   * @param element   function to get the (boxed) element at given index
+   * @param quoted    quoted predicate to produce the diagnostics
+   * @param resolver  resolver for the members referenced from the predicate
+   * @throws AssertionError if some elements don't match
+   */
+  static void assertAllMatch(int size, IntPredicate matchesAt, IntFunction<Object> element, Quoted quoted,
+                             Resolver resolver) {
+    Failures failures = new MatchTask(matchesAt, 0, size).invoke();
+    if (failures.count() == 0) return;
+    int[] indices = failures.indices();
+    fail(size, failures.count(), Arrays.stream(indices).asLongStream().toArray(),
+            Arrays.stream(indices).mapToObj(element).toArray(), quoted, resolver);
+  }
+
+  /**
+   * Checks that all the elements of the stream match the predicate. The stream is consumed entirely,
+   * but only the failing elements to report are retained.
+   *
+   * @param stream    stream to check
+   * @param matches   predicate which tests the element
+   * @param quoted    quoted predicate to produce the diagnostics
+   * @param resolver  resolver for the members referenced from the predicate
+   * @param <T>       type of the elements
+   * @throws AssertionError if some elements don't match
+   */
+  static <T> void assertAllMatch(Stream<T> stream, Predicate<? super T> matches, Quoted quoted, Resolver resolver) {
+    StreamFailures failures = stream.collect(StreamFailures::new, (f, element) -> f.add(element, matches),
+            StreamFailures::addAll);
+    if (failures.count == 0) return;
+    int reported = (int) Math.min(failures.count, MAX_REPORTED);
+    fail(failures.size, failures.count, Arrays.copyOf(failures.indices, reported),
+            Arrays.copyOf(failures.elements, reported), quoted, resolver);
+  }
+
+  private static void fail(long size, long count, long[] indices, Object[] elements, Quoted quoted,
+                           Resolver resolver) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(count).append(" of ").append(size).append(" elements do not match\n");
+    for (int i = 0; i < indices.length; i++) {
+      Object value = elements[i];
+      sb.append("element [").append(indices[i]).append("]: ").append(DefaultValueFormatter.DEFAULT.format(value))
+              .append("\n");
+      Node model = Interpreter.buildModel(quoted, Collections.singletonList(value), resolver);
+      if (!(model instanceof UnsupportedNode)) {
+        sb.append(DefaultAssertionFormatter.DEFAULT.formatAssertion(model));
+      }
+    }
+    if (count > indices.length) {
+      sb.append("... and ").append(count - indices.length).append(" more");
+    }
+    throw new AssertionError(sb.toString());
+  }
+}
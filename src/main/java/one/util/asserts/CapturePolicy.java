@@ -0,0 +1,21 @@
+package one.util.asserts;
+
+/**
+ * Defines how the evaluated values are kept when the failure message is rendered later
+ * than the condition is evaluated.
+ */
+public enum CapturePolicy {
+  /**
+   * Keep the references to the values. Rendering is precise, but mutable values could change before
+   * they are rendered, and the whole object graphs are retained until then.
+   */
+  REFERENCE,
+  /**
+   * Take bounded snapshots at evaluation time: immutable scalars and strings are kept as is, while
+   * collections, arrays, maps and mutable char sequences are shallowly copied, up to the number of elements
+   * the formatter could display, and the original sizes are recorded. Other objects are kept as is. The values
+   * are formatted when the failure is rendered. Only the diffs of failed equality checks are computed
+   * at evaluation time, from the complete values, so they report the differences beyond the copied elements.
+   */
+  SNAPSHOT
+}
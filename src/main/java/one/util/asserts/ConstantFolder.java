@@ -0,0 +1,161 @@
+package one.util.asserts;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.code.Op;
+import java.lang.reflect.code.Value;
+import java.lang.reflect.code.op.CoreOp;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static one.util.asserts.Node.*;
+
+/**
+ * Per-site storage of invariant subtrees: constants, static final fields of immutable types (primitives, their
+ * wrappers, strings and enums), and conversions, unary, binary and comparison ops over invariant operands.
+ * Such subtrees produce the same result on every evaluation, so they are evaluated once, and the resulting nodes
+ * and their decompiled texts are reused afterward. A static final field of other type may refer to a mutable object,
+ * which could compare differently later, so it's evaluated every time.
+ * The invariant ops are found once, when the folder is created for the model. The ops are keyed by identity,
+ * so the folder is bound to the root op of the quoted lambda, and is replaced if the lambda produces
+ * a different model.
+ */
+final class ConstantFolder {
+  private static final ClassValue<AtomicReference<ConstantFolder>> FOLDERS = new ClassValue<>() {
+    @Override
+    protected AtomicReference<ConstantFolder> computeValue(Class<?> type) {
+      return new AtomicReference<>();
+    }
+  };
+
+  private final Op root;
+  private final Set<Op> invariant;
+  private final Map<Op, ValueNode> folded = new ConcurrentHashMap<>();
+  private final Map<Op, String> texts = new ConcurrentHashMap<>();
+
+  private ConstantFolder(Op root) {
+    this.root = root;
+    Map<Op, Boolean> computed = new IdentityHashMap<>();
+    root.traverse(null, (_, element) -> {
+      if (element instanceof Op op) {
+        isInvariant(op, computed);
+      }
+      return null;
+    });
+    Set<Op> ops = Collections.newSetFromMap(new IdentityHashMap<>());
+    computed.forEach((op, inv) -> {
+      if (inv) ops.add(op);
+    });
+    this.invariant = ops;
+  }
+
+  /**
+   * @param lambdaClass class of the assertion condition
+   * @param root        root op of the quoted condition
+   * @return folder for the given site
+   */
+  static ConstantFolder forSite(Class<?> lambdaClass, Op root) {
+    AtomicReference<ConstantFolder> ref = FOLDERS.get(lambdaClass);
+    ConstantFolder folder = ref.get();
+    if (folder == null || folder.root != root) {
+      folder = new ConstantFolder(root);
+      ref.set(folder);
+    }
+    return folder;
+  }
+
+  /**
+   * @return false if the model has no invariant ops, so there's nothing to fold
+   */
+  boolean hasInvariants() {
+    return !invariant.isEmpty();
+  }
+
+  /**
+   * @param op op to look up
+   * @return previously computed node for the invariant op; null if the op is not invariant or not evaluated yet
+   */
+  ValueNode folded(Op op) {
+    return folded.get(op);
+  }
+
+  /**
+   * Remembers the evaluation result if the op is invariant. The stored node carries no timing,
+   * as it's not evaluated again.
+   *
+   * @param op   evaluated op
+   * @param node evaluation result
+   * @return node to use as the result: the stored one for the invariant op, the given one otherwise
+   */
+  Node fold(Op op, Node node) {
+    if (node instanceof ValueNode valueNode && invariant.contains(op)) {
+      ValueNode untimed = valueNode.nanos() < 0 ? valueNode
+              : new ValueNode(op, valueNode.value(), valueNode.children());
+      ValueNode previous = folded.putIfAbsent(op, untimed);
+      return previous == null ? untimed : previous;
+    }
+    return node;
+  }
+
+  /**
+   * @param op op to decompile
+   * @return previously decompiled text of the invariant op; null if not known
+   */
+  String text(Op op) {
+    return texts.get(op);
+  }
+
+  /**
+   * Remembers the decompiled texts of invariant ops
+   *
+   * @param opTexts texts of the ops
+   */
+  void rememberTexts(Map<Op, String> opTexts) {
+    if (invariant.isEmpty()) return;
+    opTexts.forEach((op, text) -> {
+      if (folded.containsKey(op)) {
+        texts.putIfAbsent(op, text);
+      }
+    });
+  }
+
+  private static boolean isInvariant(Op op, Map<Op, Boolean> computed) {
+    Boolean result = computed.get(op);
+    if (result == null) {
+      result = switch (op) {
+        case CoreOp.ConstantOp _ -> true;
+        case CoreOp.FieldAccessOp.FieldLoadOp load -> load.operands().isEmpty() && isImmutableStaticFinal(load);
+        case CoreOp.ConvOp _, CoreOp.NegOp _, CoreOp.NotOp _, CoreOp.BinaryOp _, CoreOp.BinaryTestOp _ ->
+                op.operands().stream().allMatch(value -> isInvariant(value, computed));
+        default -> false;
+      };
+      computed.put(op, result);
+    }
+    return result;
+  }
+
+  private static boolean isInvariant(Value value, Map<Op, Boolean> computed) {
+    return value instanceof Op.Result result && isInvariant(result.op(), computed);
+  }
+
+  private static boolean isImmutableStaticFinal(CoreOp.FieldAccessOp.FieldLoadOp load) {
+    try {
+      Field field = load.fieldDescriptor().resolveToMember(MethodHandles.lookup());
+      int modifiers = field.getModifiers();
+      return Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers) && isImmutable(field.getType());
+    } catch (ReflectiveOperationException _) {
+      return false;
+    }
+  }
+
+  private static boolean isImmutable(Class<?> type) {
+    return type.isPrimitive() || type == String.class || type.isEnum() || type == Boolean.class ||
+           type == Character.class || type == Byte.class || type == Short.class || type == Integer.class ||
+           type == Long.class || type == Float.class || type == Double.class;
+  }
+}
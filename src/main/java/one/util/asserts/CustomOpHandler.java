@@ -0,0 +1,36 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Op;
+import java.util.List;
+
+/**
+ * Handler which adds support for the additional {@link Op} type to the interpreter and decompiler.
+ * Handlers are discovered via {@link java.util.ServiceLoader}, so to register one, list its class name in
+ * {@code META-INF/services/one.util.asserts.CustomOpHandler}. A handler registered for some op class
+ * also applies to its subclasses, and takes precedence over the built-in support of the same class.
+ *
+ * @param <T> type of the supported op
+ */
+public interface CustomOpHandler<T extends Op> {
+  /**
+   * @return class of the supported op
+   */
+  Class<T> opClass();
+
+  /**
+   * Evaluates the op. Called only if all the operands were evaluated successfully.
+   *
+   * @param op       op to evaluate
+   * @param operands values of the op operands
+   * @return op result
+   * @throws Throwable if evaluation fails; the exception is displayed as the op result
+   */
+  Object evaluate(T op, List<Object> operands) throws Throwable;
+
+  /**
+   * @param op       op to decompile
+   * @param operands decompiled operands
+   * @return Java-like text of the op
+   */
+  String text(T op, List<String> operands);
+}
@@ -0,0 +1,23 @@
+package one.util.asserts;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Holder for the registered {@link CustomOpHandler}s
+ */
+final class CustomOpHandlers {
+  private static final Map<Class<?>, CustomOpHandler<?>> HANDLERS = ServiceLoader.load(CustomOpHandler.class).stream()
+          .map(provider -> (CustomOpHandler<?>) provider.get())
+          .collect(Collectors.toUnmodifiableMap(CustomOpHandler::opClass, Function.identity(), (a, _) -> a));
+
+  /**
+   * @param opClass op class
+   * @return handler registered exactly for a given class; null if there's none
+   */
+  static CustomOpHandler<?> forClass(Class<?> opClass) {
+    return HANDLERS.get(opClass);
+  }
+}
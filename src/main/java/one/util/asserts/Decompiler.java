@@ -10,6 +10,7 @@ import java.lang.reflect.code.op.ExtendedOp;
 import java.lang.reflect.code.op.OpFactory;
 import java.lang.reflect.code.type.ArrayType;
 import java.lang.reflect.code.type.ClassType;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -114,89 +115,152 @@ final class Decompiler {
   }
 
   /**
-   * @param op operation to decompile
-   * @return operation text
+   * Produces the text of the op of a specific type
+   *
+   * @param <T> type of the op
    */
-  String opText(Op op) {
-    Precedence precedence = Precedence.fromOp(op);
-    return switch (op) {
-      case CoreOp.VarOp varOp -> varOp.varName();
-      case CoreOp.VarAccessOp.VarLoadOp load -> valueText(load.operands().getFirst());
-      case CoreOp.InvokeOp inv -> {
-        List<Value> operands = inv.operands();
-        if (inv.hasReceiver()) {
-          yield valueText(operands.getFirst(), precedence) + "." + inv.invokeDescriptor().name() + "("
-                  + operands.stream().skip(1).map(this::valueText)
-                  .collect(Collectors.joining(", ")) + ")";
-        }
-        String methodName;
-        try {
-          Executable method = inv.invokeDescriptor().resolveToMember(MethodHandles.lookup());
-          methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
-        } catch (ReflectiveOperationException e) {
-          methodName = formatTypeName(inv.invokeDescriptor().refType()) + "." + inv.invokeDescriptor().name();
-        }
-        yield methodName + "(" + operands.stream().map(this::valueText)
-                .collect(Collectors.joining(",")) + ")";
-      }
-      case CoreOp.ConvOp conv -> "(" + conv.resultType().toString() + ")" + valueText(conv.operands().getFirst(), precedence);
-      case CoreOp.FieldAccessOp.FieldLoadOp load -> {
-        List<Value> operands = load.operands();
-        if (!operands.isEmpty()) {
-          yield valueText(operands.getFirst(), precedence) + "." + load.fieldDescriptor().name();
-        }
-        try {
-          Field field = load.fieldDescriptor().resolveToMember(MethodHandles.lookup());
-          yield field.getDeclaringClass().getSimpleName() + "." + field.getName();
-        } catch (ReflectiveOperationException e) {
-          yield formatTypeName(load.fieldDescriptor().refType()) + "." + load.fieldDescriptor().name();
-        }
-      }
-      case CoreOp.NewOp newOp -> {
-        TypeElement resultType = newOp.resultType();
-        // TODO: initialized arrays
-        if (resultType instanceof ArrayType arrayType) {
-          yield "new " + formatTypeName(Util.deepComponentType(arrayType)) +
-                  newOp.operands().stream().map(v -> "[" + valueText(v) + "]").collect(Collectors.joining());
+  @FunctionalInterface
+  private interface TextHandler<T extends Op> {
+    String text(Decompiler decompiler, T op, Precedence precedence);
+  }
+
+  private static final Map<Class<?>, TextHandler<?>> BUILT_IN_HANDLERS = builtInHandlers();
+
+  private static final ClassValue<TextHandler<Op>> HANDLERS = new ClassValue<>() {
+    @Override
+    protected TextHandler<Op> computeValue(Class<?> type) {
+      return findHandler(type);
+    }
+  };
+
+  private static Map<Class<?>, TextHandler<?>> builtInHandlers() {
+    Map<Class<?>, TextHandler<?>> handlers = new HashMap<>();
+    register(handlers, CoreOp.VarOp.class, (_, op, _) -> op.varName());
+    register(handlers, CoreOp.VarAccessOp.VarLoadOp.class, (d, op, _) -> d.valueText(op.operands().getFirst()));
+    register(handlers, CoreOp.InvokeOp.class, Decompiler::invoke);
+    register(handlers, CoreOp.ConvOp.class, (d, op, precedence) ->
+            "(" + op.resultType().toString() + ")" + d.valueText(op.operands().getFirst(), precedence));
+    register(handlers, CoreOp.FieldAccessOp.FieldLoadOp.class, Decompiler::fieldLoad);
+    register(handlers, CoreOp.NewOp.class, Decompiler::newOp);
+    register(handlers, CoreOp.ArrayLengthOp.class, (d, op, precedence) ->
+            d.valueText(op.operands().getFirst(), precedence) + ".length");
+    register(handlers, CoreOp.ArrayAccessOp.ArrayLoadOp.class, (d, op, precedence) ->
+            d.valueText(op.operands().getFirst(), precedence) + "[" + d.valueText(op.operands().getLast()) + "]");
+    register(handlers, CoreOp.BinaryTestOp.class, Decompiler::binary);
+    register(handlers, CoreOp.BinaryOp.class, Decompiler::binary);
+    register(handlers, CoreOp.UnaryOp.class, (d, op, precedence) ->
+            opSymbol(op) + d.valueText(op.operands().getFirst(), precedence));
+    register(handlers, CoreOp.ReturnOp.class, (d, op, _) -> "return " + d.valueText(op.operands().getFirst()));
+    register(handlers, CoreOp.YieldOp.class, (d, op, _) -> d.valueText(op.operands().getFirst()));
+    register(handlers, CoreOp.ConstantOp.class, (d, op, _) -> d.formatter.format(op.value()));
+    register(handlers, CoreOp.CastOp.class, (d, op, precedence) ->
+            "(" + formatTypeName(op.type()) + ")" + d.valueText(op.operands().getFirst(), precedence));
+    register(handlers, CoreOp.InstanceOfOp.class, (d, op, precedence) ->
+            d.valueText(op.operands().getFirst(), precedence) + " instanceof " + formatTypeName(op.type()));
+    register(handlers, Interpreter.ThisOp.class, (_, _, _) -> "this");
+    register(handlers, CoreOp.QuotedOp.class, Decompiler::quoted);
+    register(handlers, ExtendedOp.JavaConditionalOp.class, (d, op, precedence) ->
+            op.children().stream().map(body -> d.opText(body.entryBlock().terminatingOp(), precedence))
+                    .collect(Collectors.joining(" " + opSymbol(op) + " ")));
+    register(handlers, ExtendedOp.JavaConditionalExpressionOp.class, (d, op, precedence) -> {
+      List<Body> children = op.children();
+      return d.opText(children.get(0).entryBlock().terminatingOp(), precedence) + " ? " +
+              d.opText(children.get(1).entryBlock().terminatingOp(), precedence) + " : " +
+              d.opText(children.get(2).entryBlock().terminatingOp(), precedence);
+    });
+    return handlers;
+  }
+
+  private static <T extends Op> void register(Map<Class<?>, TextHandler<?>> handlers, Class<T> opClass,
+                                              TextHandler<T> handler) {
+    handlers.put(opClass, handler);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static TextHandler<Op> findHandler(Class<?> type) {
+    for (Class<?> cls = type; cls != null && cls != Op.class; cls = cls.getSuperclass()) {
+      for (Class<?> candidate : Util.withInterfaces(cls)) {
+        CustomOpHandler<?> custom = CustomOpHandlers.forClass(candidate);
+        if (custom != null) {
+          return (decompiler, op, _) -> decompiler.custom(custom, op);
         }
-        String operands = "(" + newOp.operands().stream().map(this::valueText)
-                .collect(Collectors.joining(",")) + ")";
-        yield "new " + formatTypeName(newOp.type()) + operands;
-      }
-      case CoreOp.ArrayLengthOp _ -> valueText(op.operands().getFirst(), precedence) + ".length";
-      case CoreOp.ArrayAccessOp.ArrayLoadOp _ ->
-              valueText(op.operands().getFirst(), precedence) + "[" + valueText(op.operands().getLast()) + "]";
-      case CoreOp.BinaryTestOp _, CoreOp.BinaryOp _ ->
-              valueText(op.operands().get(0), precedence) + " " + opSymbol(op) + " " + valueText(op.operands().get(1), precedence);
-      case CoreOp.UnaryOp _ -> opSymbol(op) + valueText(op.operands().getFirst(), precedence);
-      case CoreOp.ReturnOp _ -> "return " + valueText(op.operands().getFirst());
-      case CoreOp.YieldOp _ -> valueText(op.operands().getFirst());
-      case CoreOp.ConstantOp c -> formatter.format(c.value());
-      case CoreOp.CastOp cast -> "(" + formatTypeName(cast.type()) + ")" + valueText(op.operands().getFirst(), precedence);
-      case CoreOp.InstanceOfOp instanceOf ->
-              valueText(op.operands().getFirst(), precedence) +" instanceof " + formatTypeName(instanceOf.type());
-      case Interpreter.ThisOp _ -> "this";
-      case CoreOp.QuotedOp quoted -> {
-        // TODO: lambdas; instance-bound MR; static method MR; constructor MR
-        CoreOp.InvokeOp invokeOp = Util.extractMethodReference(quoted);
-        if (invokeOp != null) {
-          String type = formatTypeName(invokeOp.invokeDescriptor().refType());
-          String name = invokeOp.invokeDescriptor().name();
-          yield type + "::" + name;
+        TextHandler<?> handler = BUILT_IN_HANDLERS.get(candidate);
+        if (handler != null) {
+          return (TextHandler<Op>) handler;
         }
-        yield op.toText() + ":" + op.getClass();
-      }
-      case ExtendedOp.JavaConditionalOp cand ->
-              cand.children().stream().map(body -> opText(body.entryBlock().terminatingOp(), precedence))
-                      .collect(Collectors.joining(" " + opSymbol(cand) + " "));
-      case ExtendedOp.JavaConditionalExpressionOp ternary -> {
-        List<Body> children = ternary.children();
-        yield opText(children.get(0).entryBlock().terminatingOp(), precedence) + " ? " +
-                opText(children.get(1).entryBlock().terminatingOp(), precedence) + " : " +
-                opText(children.get(2).entryBlock().terminatingOp(), precedence);
       }
-      default -> op.toText() + ":" + op.getClass();
-    };
+    }
+    return (_, op, _) -> op.toText() + ":" + op.getClass();
+  }
+
+  /**
+   * @param op operation to decompile
+   * @return operation text
+   */
+  String opText(Op op) {
+    return HANDLERS.get(op.getClass()).text(this, op, Precedence.fromOp(op));
+  }
+
+  private <T extends Op> String custom(CustomOpHandler<T> handler, Op op) {
+    return handler.text(handler.opClass().cast(op), op.operands().stream().map(this::valueText).toList());
+  }
+
+  private String invoke(CoreOp.InvokeOp inv, Precedence precedence) {
+    List<Value> operands = inv.operands();
+    if (inv.hasReceiver()) {
+      return valueText(operands.getFirst(), precedence) + "." + inv.invokeDescriptor().name() + "("
+              + operands.stream().skip(1).map(this::valueText)
+              .collect(Collectors.joining(", ")) + ")";
+    }
+    String methodName;
+    try {
+      Executable method = inv.invokeDescriptor().resolveToMember(MethodHandles.lookup());
+      methodName = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    } catch (ReflectiveOperationException e) {
+      methodName = formatTypeName(inv.invokeDescriptor().refType()) + "." + inv.invokeDescriptor().name();
+    }
+    return methodName + "(" + operands.stream().map(this::valueText)
+            .collect(Collectors.joining(",")) + ")";
+  }
+
+  private String fieldLoad(CoreOp.FieldAccessOp.FieldLoadOp load, Precedence precedence) {
+    List<Value> operands = load.operands();
+    if (!operands.isEmpty()) {
+      return valueText(operands.getFirst(), precedence) + "." + load.fieldDescriptor().name();
+    }
+    try {
+      Field field = load.fieldDescriptor().resolveToMember(MethodHandles.lookup());
+      return field.getDeclaringClass().getSimpleName() + "." + field.getName();
+    } catch (ReflectiveOperationException e) {
+      return formatTypeName(load.fieldDescriptor().refType()) + "." + load.fieldDescriptor().name();
+    }
+  }
+
+  private String newOp(CoreOp.NewOp newOp, Precedence precedence) {
+    TypeElement resultType = newOp.resultType();
+    // TODO: initialized arrays
+    if (resultType instanceof ArrayType arrayType) {
+      return "new " + formatTypeName(Util.deepComponentType(arrayType)) +
+              newOp.operands().stream().map(v -> "[" + valueText(v) + "]").collect(Collectors.joining());
+    }
+    String operands = "(" + newOp.operands().stream().map(this::valueText)
+            .collect(Collectors.joining(",")) + ")";
+    return "new " + formatTypeName(newOp.type()) + operands;
+  }
+
+  private String binary(Op op, Precedence precedence) {
+    return valueText(op.operands().get(0), precedence) + " " + opSymbol(op) + " " + valueText(op.operands().get(1), precedence);
+  }
+
+  private String quoted(CoreOp.QuotedOp quoted, Precedence precedence) {
+    // TODO: lambdas; instance-bound MR; static method MR; constructor MR
+    CoreOp.InvokeOp invokeOp = Util.extractMethodReference(quoted);
+    if (invokeOp != null) {
+      String type = formatTypeName(invokeOp.invokeDescriptor().refType());
+      String name = invokeOp.invokeDescriptor().name();
+      return type + "::" + name;
+    }
+    return quoted.toText() + ":" + quoted.getClass();
   }
 
   private String opText(Op op, Precedence outerPrecedence) {
@@ -1,38 +1,177 @@
 package one.util.asserts;
 
+import java.lang.reflect.code.Op;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
 public final class DefaultAssertionFormatter implements AssertionFormatter {
   private final ValueFormatter valueFormatter;
   private final Decompiler decompiler;
+  private final Differ differ;
 
-  static final AssertionFormatter DEFAULT = new DefaultAssertionFormatter(DefaultValueFormatter.DEFAULT, Decompiler.DEFAULT);
+  static final DefaultAssertionFormatter DEFAULT = new DefaultAssertionFormatter(DefaultValueFormatter.DEFAULT, Decompiler.DEFAULT);
 
   DefaultAssertionFormatter(ValueFormatter valueFormatter, Decompiler decompiler) {
     this.valueFormatter = valueFormatter;
     this.decompiler = decompiler;
+    this.differ = new Differ(valueFormatter);
   }
 
   @Override
   public String formatAssertion(Node node) {
+    return formatAssertion(node, decompile(node));
+  }
+
+  /**
+   * Decompiles all the ops which appear in the formatted assertion
+   *
+   * @param node root node
+   * @return map from op to its text
+   */
+  Map<Op, String> decompile(Node node) {
+    return decompile(node, _ -> null);
+  }
+
+  /**
+   * Decompiles all the ops which appear in the formatted assertion
+   *
+   * @param node   root node
+   * @param cached function which returns previously computed text of the op, or null if it's not known
+   * @return map from op to its text
+   */
+  Map<Op, String> decompile(Node node, Function<Op, String> cached) {
+    Map<Op, String> texts = new IdentityHashMap<>();
+    decompile(texts, node, cached);
+    return texts;
+  }
+
+  private void decompile(Map<Op, String> texts, Node node, Function<Op, String> cached) {
+    node.children().forEach(c -> decompile(texts, c, cached));
+    if (!(node instanceof Node.ValueNode valueNode) || !valueNode.isTrivial()) {
+      texts.computeIfAbsent(node.op(), op -> {
+        String text = cached.apply(op);
+        return text != null ? text : decompiler.opText(op);
+      });
+    }
+  }
+
+  /**
+   * @param node  root node
+   * @param texts op texts, as returned by {@link #decompile(Node)}
+   * @return formatted assertion
+   */
+  String formatAssertion(Node node, Map<Op, String> texts) {
+    return formatAssertion(node, texts, null);
+  }
+
+  /**
+   * @param node   root node
+   * @param texts  op texts, as returned by {@link #decompile(Node)}
+   * @param budget evaluation budget tracker; once it's exhausted, values are not formatted anymore.
+   *               Null if unlimited.
+   * @return formatted assertion
+   */
+  String formatAssertion(Node node, Map<Op, String> texts, EvaluationBudget.Tracker budget) {
     StringBuilder sb = new StringBuilder();
-    format(sb, node);
+    format(sb, node, texts, budget, new Printed());
+    if (budget != null && budget.wasExhausted() || hasSkipped(node)) {
+      sb.append("(evaluation budget exhausted: some subexpressions were not evaluated or formatted)\n");
+    }
     return sb.toString();
   }
   
-  private void format(StringBuilder sb, Node node) {
-    node.children().forEach(c -> format(sb, c));
+  private static boolean hasSkipped(Node node) {
+    return node instanceof Node.NotEvaluatedNode ||
+            node instanceof Node.ValueNode valueNode && valueNode.value() == ValueSnapshot.NOT_FORMATTED ||
+            node.children().stream().anyMatch(DefaultAssertionFormatter::hasSkipped);
+  }
+
+  /**
+   * Lines already printed for the assertion. A value loaded several times is printed once:
+   * the repeated line with the same text and value is omitted, and the same object displayed
+   * under a different text refers back to the first one.
+   */
+  private static final class Printed {
+    private final Map<String, Object> byText = new HashMap<>();
+    private final Map<Object, String> byIdentity = new IdentityHashMap<>();
+
+    /**
+     * @param text  op text
+     * @param value op value
+     * @return null if the value should be printed; empty string if the line should be omitted;
+     * otherwise the text of the first op which displayed the same object
+     */
+    String seen(String text, Object value) {
+      if (byText.containsKey(text)) {
+        Object prev = byText.get(text);
+        if (prev == value || ValueSnapshot.isCompact(value) && Objects.equals(prev, value)) return "";
+      }
+      byText.put(text, value);
+      if (ValueSnapshot.isCompact(value) || value == ValueSnapshot.NOT_FORMATTED) return null;
+      return byIdentity.putIfAbsent(value, text);
+    }
+  }
+
+  private void format(StringBuilder sb, Node node, Map<Op, String> texts, EvaluationBudget.Tracker budget,
+                      Printed printed) {
+    node.children().forEach(c -> format(sb, c, texts, budget, printed));
     switch (node) {
-      case Node.ExceptionNode exceptionNode -> sb.append(decompiler.opText(node.op()))
-              .append(" -> throws ")
-              .append(valueFormatter.format(exceptionNode.throwable())).append("\n");
+      case Node.ExceptionNode exceptionNode -> {
+        sb.append(texts.get(node.op())).append(" -> throws ")
+                .append(valueFormatter.format(exceptionNode.throwable()));
+        appendNanos(sb, exceptionNode.nanos());
+      }
       case Node.UnsupportedNode _ -> sb.append("Unsupported node: ")
-              .append(decompiler.opText(node.op())).append(" (")
+              .append(texts.get(node.op())).append(" (")
               .append(node.op().getClass()).append(")\n");
+      case Node.NotEvaluatedNode _ -> sb.append(texts.get(node.op())).append(" -> not evaluated\n");
       case Node.ValueNode valueNode -> {
         if (!valueNode.isTrivial()) {
-          sb.append(decompiler.opText(node.op())).append(" -> ")
-                  .append(valueFormatter.format(valueNode.value())).append("\n");
+          String text = texts.get(node.op());
+          if (budget != null && budget.exhausted()) {
+            sb.append(text).append(" -> not formatted\n");
+            return;
+          }
+          String seen = printed.seen(text, valueNode.value());
+          if (seen != null) {
+            if (!seen.isEmpty()) {
+              sb.append(text).append(" -> (same as ").append(seen).append(")");
+              appendNanos(sb, valueNode.nanos());
+            }
+            return;
+          }
+          sb.append(text).append(" -> ").append(valueFormatter.format(valueNode.value()));
+          appendNanos(sb, valueNode.nanos());
+          if (valueNode.value() instanceof ValueSnapshot.Mismatch mismatch) {
+            sb.append(mismatch.diff().text());
+          } else if (Differ.isFailedEquality(valueNode)) {
+            formatDiff(sb, valueNode.children().getFirst(), valueNode.children().getLast());
+          }
         }
       }
     }
   }
+
+  /**
+   * Terminates the line, appending the evaluation time, if it was measured
+   */
+  private static void appendNanos(StringBuilder sb, long nanos) {
+    if (nanos >= 1_000_000) {
+      sb.append(" (").append(nanos / 1_000_000).append(" ms)");
+    } else if (nanos >= 1_000) {
+      sb.append(" (").append(nanos / 1_000).append(" \u00b5s)");
+    } else if (nanos >= 0) {
+      sb.append(" (").append(nanos).append(" ns)");
+    }
+    sb.append("\n");
+  }
+
+  private void formatDiff(StringBuilder sb, Node left, Node right) {
+    if (left instanceof Node.ValueNode leftValue && right instanceof Node.ValueNode rightValue) {
+      differ.diff(leftValue.value(), rightValue.value()).forEach(line -> sb.append("  ").append(line).append("\n"));
+    }
+  }
 }
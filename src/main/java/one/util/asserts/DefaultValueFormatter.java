@@ -21,6 +21,9 @@ final class DefaultValueFormatter implements ValueFormatter {
   private void formatValue(StringBuilder sb, Object object) {
     switch (object) {
       case null -> sb.append("null");
+      case ValueSnapshot.Rendered rendered -> sb.append(rendered.text());
+      case ValueSnapshot.Copy copy -> formatValue(sb, copy.value());
+      case ValueSnapshot.Mismatch _ -> sb.append(false);
       case Integer _, Short _, Byte _, Boolean _ -> sb.append(object);
       case Character c -> sb.append("'").append(escapeJavaString(c.toString(), 100)).append("'");
       case Long _ -> sb.append(object).append("L");
@@ -0,0 +1,377 @@
+package one.util.asserts;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.code.op.CoreOp;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+import static one.util.asserts.Node.*;
+
+/**
+ * Produces a short description of the difference between two values which are not equal.
+ * All the algorithms are linear in time and the output is bounded, so it's safe to use on huge inputs.
+ * Records and beans of the same class are compared property-by-property, reporting the paths which differ.
+ */
+final class Differ {
+  static final Differ DEFAULT = new Differ(DefaultValueFormatter.DEFAULT);
+
+  private static final int MAX_DIFFS = 5;
+  private static final int MAX_ELEMENTS = 5;
+  private static final int CHUNK = 256;
+  private static final int STRING_CONTEXT = 20;
+  private static final int MAX_DEPTH = 8;
+  private static final int MAX_LINES = 30;
+  private static final int MAX_NODES = 1000;
+
+  /**
+   * Cached record component or bean property accessors.
+   * Empty list means that the class is not diffed structurally.
+   */
+  private static final ClassValue<List<Accessor>> ACCESSORS = new ClassValue<>() {
+    @Override
+    protected List<Accessor> computeValue(Class<?> type) {
+      return accessors(type);
+    }
+  };
+
+  private final ValueFormatter formatter;
+
+  Differ(ValueFormatter formatter) {
+    this.formatter = formatter;
+  }
+
+  /**
+   * @param node node to check
+   * @return true if the node represents a failed {@code equals} call or {@code ==} comparison
+   */
+  static boolean isFailedEquality(ValueNode node) {
+    if (!Boolean.FALSE.equals(node.value()) || node.children().size() != 2) return false;
+    return switch (node.op()) {
+      case CoreOp.InvokeOp inv -> inv.invokeDescriptor().name().equals("equals");
+      case CoreOp.EqOp _ -> true;
+      default -> false;
+    };
+  }
+
+  /**
+   * @param left  left value
+   * @param right right value
+   * @return lines describing the difference; empty list if the difference cannot be described
+   * better than by printing both values
+   */
+  List<String> diff(Object left, Object right) {
+    Walk walk = new Walk();
+    diff(walk, "", left, right);
+    return walk.lines;
+  }
+
+  private void diff(Walk out, String path, Object left, Object right) {
+    if (left == null || right == null || out.depth >= MAX_DEPTH || out.exhausted() ||
+            out.visiting.contains(left) || out.visiting.contains(right)) return;
+    out.visited++;
+    out.visiting.add(left);
+    out.visiting.add(right);
+    out.depth++;
+    try {
+      diffNonNull(out, path, left, right);
+    } finally {
+      out.depth--;
+      out.visiting.remove(left);
+      out.visiting.remove(right);
+    }
+  }
+
+  private void diffNonNull(Walk out, String path, Object left, Object right) {
+    switch (left) {
+      case String l when right instanceof String r -> diffStrings(out, path, l, r);
+      case List<?> l when right instanceof List<?> r -> {
+        Object[] la = l.toArray();
+        Object[] ra = r.toArray();
+        diffIndexed(out, path, "size", la.length, ra.length,
+                (lf, lt, rf, rt) -> Arrays.mismatch(la, lf, lt, ra, rf, rt), i -> la[i], i -> ra[i]);
+      }
+      case Set<?> l when right instanceof Set<?> r -> diffKeys(out, path, l, r::contains, r, l::contains);
+      case Map<?, ?> l when right instanceof Map<?, ?> r -> diffMaps(out, path, l, r);
+      case Object[] l when right instanceof Object[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case int[] l when right instanceof int[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case long[] l when right instanceof long[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case double[] l when right instanceof double[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case float[] l when right instanceof float[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case short[] l when right instanceof short[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case byte[] l when right instanceof byte[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case char[] l when right instanceof char[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      case boolean[] l when right instanceof boolean[] r -> diffIndexed(out, path, "length", l.length, r.length,
+              (lf, lt, rf, rt) -> Arrays.mismatch(l, lf, lt, r, rf, rt), i -> l[i], i -> r[i]);
+      default -> {
+        if (left.getClass() == right.getClass()) {
+          diffProperties(out, path, ACCESSORS.get(left.getClass()), left, right);
+        }
+      }
+    }
+  }
+
+  private void diffElement(Walk out, String path, Object left, Object right) {
+    // Both sides point back to the objects being compared already
+    if (out.exhausted() || out.visiting.contains(left) && out.visiting.contains(right)) return;
+    int size = out.lines.size();
+    if (!(left instanceof String)) {
+      diff(out, path, left, right);
+    }
+    if (out.lines.size() == size && !out.exhausted()) {
+      out.add(path + ": " + formatElement(out, left) + " vs " + formatElement(out, right));
+    }
+  }
+
+  private String formatElement(Walk out, Object value) {
+    return value != null && out.visiting.contains(value) ? "(cycle)" : formatter.format(value);
+  }
+
+  private void diffProperties(Walk out, String path, List<Accessor> accessors, Object left, Object right) {
+    for (Accessor accessor : accessors) {
+      if (out.exhausted()) return;
+      Object leftValue, rightValue;
+      try {
+        leftValue = (Object) accessor.getter().invokeExact(left);
+        rightValue = (Object) accessor.getter().invokeExact(right);
+      } catch (Throwable _) {
+        continue;
+      }
+      if (!Objects.equals(leftValue, rightValue)) {
+        diffElement(out, path + "." + accessor.name(), leftValue, rightValue);
+      }
+    }
+  }
+
+  private void diffStrings(Walk out, String path, String left, String right) {
+    int prefix = stringMismatch(left, right);
+    if (prefix < 0) return;
+    out.add(header(path) + "length " + left.length() + " vs " + right.length() + ", first difference at index " + prefix);
+    out.add(header(path) + snippet(left, prefix) + " vs " + snippet(right, prefix));
+  }
+
+  private static String header(String path) {
+    return path.isEmpty() ? "" : path + ": ";
+  }
+
+  private String snippet(String str, int pos) {
+    int from = Math.max(0, pos - STRING_CONTEXT);
+    int to = Math.min(str.length(), pos + STRING_CONTEXT);
+    return (from > 0 ? "..." : "") + formatter.format(str.substring(from, to)) + (to < str.length() ? "..." : "");
+  }
+
+  /**
+   * Finds the first mismatching char, comparing the strings chunk-by-chunk using vectorized
+   * {@link Arrays#mismatch(char[], int, int, char[], int, int)}.
+   */
+  private static int stringMismatch(String left, String right) {
+    int length = Math.min(left.length(), right.length());
+    char[] leftChunk = new char[Math.min(CHUNK, length)];
+    char[] rightChunk = new char[leftChunk.length];
+    for (int offset = 0; offset < length; offset += CHUNK) {
+      int size = Math.min(CHUNK, length - offset);
+      left.getChars(offset, offset + size, leftChunk, 0);
+      right.getChars(offset, offset + size, rightChunk, 0);
+      int mismatch = Arrays.mismatch(leftChunk, 0, size, rightChunk, 0, size);
+      if (mismatch >= 0) return offset + mismatch;
+    }
+    return left.length() == right.length() ? -1 : length;
+  }
+
+  private void diffIndexed(Walk out, String path, String sizeName, int leftSize, int rightSize,
+                           RangeMismatch mismatch, IntFunction<Object> left, IntFunction<Object> right) {
+    if (leftSize == rightSize) {
+      int count = 0;
+      int from = 0;
+      while (from < leftSize) {
+        int pos = mismatch.mismatch(from, leftSize, from, rightSize);
+        if (pos < 0) break;
+        int index = from + pos;
+        if (count < MAX_DIFFS && !out.exhausted()) {
+          diffElement(out, path + "[" + index + "]", left.apply(index), right.apply(index));
+        }
+        count++;
+        from = index + 1;
+      }
+      if (count > MAX_DIFFS) {
+        out.add(header(path) + "... " + count + " elements differ in total");
+      }
+      return;
+    }
+    out.add(header(path) + sizeName + " " + leftSize + " vs " + rightSize);
+    int minSize = Math.min(leftSize, rightSize);
+    int prefix = mismatch.mismatch(0, minSize, 0, minSize);
+    if (prefix < 0) prefix = minSize;
+    int suffix = 0;
+    int maxSuffix = minSize - prefix;
+    while (suffix < maxSuffix) {
+      int chunk = Math.min(CHUNK, maxSuffix - suffix);
+      if (mismatch.mismatch(leftSize - suffix - chunk, leftSize - suffix,
+              rightSize - suffix - chunk, rightSize - suffix) < 0) {
+        suffix += chunk;
+        continue;
+      }
+      while (Objects.equals(left.apply(leftSize - suffix - 1), right.apply(rightSize - suffix - 1))) {
+        suffix++;
+      }
+      break;
+    }
+    int leftEnd = leftSize - suffix;
+    int rightEnd = rightSize - suffix;
+    if (prefix < leftEnd) {
+      out.add(header(path) + "only in left at [" + prefix + ".." + leftEnd + "): " + elements(left, prefix, leftEnd));
+    }
+    if (prefix < rightEnd) {
+      out.add(header(path) + "only in right at [" + prefix + ".." + rightEnd + "): " + elements(right, prefix, rightEnd));
+    }
+  }
+
+  private String elements(IntFunction<Object> elements, int from, int to) {
+    StringJoiner joiner = new StringJoiner(", ");
+    int limit = Math.min(to, from + MAX_ELEMENTS);
+    for (int i = from; i < limit; i++) {
+      joiner.add(formatter.format(elements.apply(i)));
+    }
+    if (to > limit) {
+      joiner.add("... (" + (to - limit) + " more)");
+    }
+    return joiner.toString();
+  }
+
+  private void diffMaps(Walk out, String path, Map<?, ?> left, Map<?, ?> right) {
+    diffKeys(out, path, left.keySet(), right::containsKey, right.keySet(), left::containsKey);
+    int count = 0;
+    for (Map.Entry<?, ?> entry : left.entrySet()) {
+      Object key = entry.getKey();
+      Object rightValue = right.get(key);
+      if (rightValue == null && !right.containsKey(key) || Objects.equals(entry.getValue(), rightValue)) continue;
+      if (count < MAX_DIFFS && !out.exhausted()) {
+        diffElement(out, path + "[" + formatter.format(key) + "]", entry.getValue(), rightValue);
+      }
+      count++;
+    }
+    if (count > MAX_DIFFS) {
+      out.add(header(path) + "... " + count + " values differ in total");
+    }
+  }
+
+  private void diffKeys(Walk out, String path, Collection<?> left, Predicate<Object> inRight,
+                        Collection<?> right, Predicate<Object> inLeft) {
+    keysOnlyIn(out, path, "left", left, inRight);
+    keysOnlyIn(out, path, "right", right, inLeft);
+  }
+
+  private void keysOnlyIn(Walk out, String path, String side, Collection<?> keys,
+                          Predicate<Object> inOther) {
+    StringJoiner joiner = new StringJoiner(", ");
+    int count = 0;
+    for (Object key : keys) {
+      if (inOther.test(key)) continue;
+      if (count < MAX_ELEMENTS) {
+        joiner.add(formatter.format(key));
+      }
+      count++;
+    }
+    if (count == 0) return;
+    if (count > MAX_ELEMENTS) {
+      joiner.add("... (" + (count - MAX_ELEMENTS) + " more)");
+    }
+    out.add(header(path) + "only in " + side + ": " + joiner);
+  }
+
+  private static List<Accessor> accessors(Class<?> type) {
+    if (type.isRecord()) {
+      List<Accessor> accessors = new ArrayList<>();
+      for (RecordComponent component : type.getRecordComponents()) {
+        Accessor accessor = Accessor.of(component.getName(), component.getAccessor());
+        if (accessor == null) return List.of();
+        accessors.add(accessor);
+      }
+      return List.copyOf(accessors);
+    }
+    String name = type.getName();
+    if (type.isArray() || type.isEnum() || name.startsWith("java.") || name.startsWith("javax.")) return List.of();
+    List<Accessor> accessors = new ArrayList<>();
+    for (Method method : type.getMethods()) {
+      String property = propertyName(method);
+      if (property == null) continue;
+      Accessor accessor = Accessor.of(property, method);
+      if (accessor != null) accessors.add(accessor);
+    }
+    accessors.sort(Comparator.comparing(Accessor::name));
+    return List.copyOf(accessors);
+  }
+
+  private static String propertyName(Method method) {
+    if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0 ||
+            method.getDeclaringClass() == Object.class) return null;
+    String name = method.getName();
+    int prefix = name.startsWith("get") && method.getReturnType() != void.class ? 3 :
+            name.startsWith("is") && method.getReturnType() == boolean.class ? 2 : 0;
+    if (prefix == 0 || name.length() == prefix || !Character.isUpperCase(name.charAt(prefix))) return null;
+    return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+  }
+
+  /**
+   * Property of a record or a bean
+   *
+   * @param name   property name
+   * @param getter getter handle of type {@code (Object)Object}
+   */
+  private record Accessor(String name, MethodHandle getter) {
+    static Accessor of(String name, Method method) {
+      try {
+        method.trySetAccessible();
+        MethodHandle handle = MethodHandles.lookup().unreflect(method);
+        return new Accessor(name, handle.asType(MethodType.methodType(Object.class, Object.class)));
+      } catch (IllegalAccessException _) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * State of the single diff operation
+   */
+  private static final class Walk {
+    final List<String> lines = new ArrayList<>();
+    final Set<Object> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+    int depth;
+    int visited;
+
+    void add(String line) {
+      if (lines.size() < MAX_LINES) {
+        lines.add(line);
+      }
+    }
+
+    /**
+     * @return true if no more lines can be added, or too many nodes were visited; the walk should stop
+     */
+    boolean exhausted() {
+      return lines.size() >= MAX_LINES || visited >= MAX_NODES;
+    }
+  }
+
+  @FunctionalInterface
+  private interface RangeMismatch {
+    /**
+     * @return relative index of the first mismatch within the ranges, or -1 if ranges are equal
+     * (see {@link Arrays#mismatch(Object[], int, int, Object[], int, int)})
+     */
+    int mismatch(int leftFrom, int leftTo, int rightFrom, int rightTo);
+  }
+}
@@ -0,0 +1,117 @@
+package one.util.asserts;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+
+/**
+ * Limits the resources spent to evaluate the subexpressions of a single assertion and to format
+ * the failure message. When the budget is exhausted, the remaining subexpressions are not evaluated
+ * (or their values are not formatted), and the message notes this. The budget is checked between
+ * the ops, so a single slow method call cannot be interrupted.
+ * <p>
+ * The default budget is unlimited, unless the {@value #TIME_PROPERTY} (milliseconds) or {@value #BYTES_PROPERTY}
+ * system properties are set.
+ *
+ * @see RefAsserts#setEvaluationBudget(EvaluationBudget)
+ */
+public final class EvaluationBudget {
+  static final String TIME_PROPERTY = "one.util.asserts.budget.millis";
+  static final String BYTES_PROPERTY = "one.util.asserts.budget.bytes";
+
+  /**
+   * No limits
+   */
+  public static final EvaluationBudget UNLIMITED = new EvaluationBudget(Long.MAX_VALUE, Long.MAX_VALUE);
+
+  static final EvaluationBudget DEFAULT = fromProperties();
+
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+          ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean &&
+                  bean.isThreadAllocatedMemorySupported() ? bean : null;
+
+  private final long nanos;
+  private final long bytes;
+
+  private EvaluationBudget(long nanos, long bytes) {
+    this.nanos = nanos;
+    this.bytes = bytes;
+  }
+
+  private static EvaluationBudget fromProperties() {
+    Long millis = Long.getLong(TIME_PROPERTY);
+    Long bytes = Long.getLong(BYTES_PROPERTY);
+    EvaluationBudget budget = millis == null ? UNLIMITED : ofTime(Duration.ofMillis(millis));
+    return bytes == null ? budget : budget.withAllocatedBytes(bytes);
+  }
+
+  /**
+   * @param time maximal wall time; the time which exceeds the nanosecond range is unlimited
+   * @return budget limited by the wall time
+   */
+  public static EvaluationBudget ofTime(Duration time) {
+    long nanos;
+    try {
+      nanos = time.toNanos();
+    } catch (ArithmeticException _) {
+      nanos = Long.MAX_VALUE;
+    }
+    return new EvaluationBudget(nanos, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param allocatedBytes maximal number of bytes allocated by the evaluating thread
+   * @return new budget which additionally limits the allocated bytes. The limit is ignored if the JVM
+   * does not support measuring the thread allocation.
+   * @see com.sun.management.ThreadMXBean#getCurrentThreadAllocatedBytes()
+   */
+  public EvaluationBudget withAllocatedBytes(long allocatedBytes) {
+    return new EvaluationBudget(nanos, allocatedBytes);
+  }
+
+  /**
+   * @return tracker of the spent budget, started now; null if the budget is unlimited
+   */
+  Tracker start() {
+    boolean trackBytes = bytes != Long.MAX_VALUE && THREAD_BEAN != null && THREAD_BEAN.isThreadAllocatedMemoryEnabled();
+    if (nanos == Long.MAX_VALUE && !trackBytes) return null;
+    return new Tracker(nanos, trackBytes ? bytes : Long.MAX_VALUE);
+  }
+
+  /**
+   * Budget spent by a single assertion. Must be used by one thread only.
+   */
+  static final class Tracker {
+    private final long maxNanos;
+    private final long startNanos;
+    private final long maxBytes;
+    private final long startBytes;
+    private boolean exhausted;
+
+    private Tracker(long maxNanos, long maxBytes) {
+      this.maxNanos = maxNanos;
+      this.startNanos = maxNanos == Long.MAX_VALUE ? 0 : System.nanoTime();
+      this.maxBytes = maxBytes;
+      this.startBytes = maxBytes == Long.MAX_VALUE ? 0 : THREAD_BEAN.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @return true if the budget is exhausted; once exhausted, stays so
+     */
+    boolean exhausted() {
+      if (!exhausted) {
+        // Elapsed time is compared rather than the deadline, as nanoTime() may overflow
+        exhausted = maxNanos != Long.MAX_VALUE && System.nanoTime() - startNanos > maxNanos ||
+                maxBytes != Long.MAX_VALUE && THREAD_BEAN.getCurrentThreadAllocatedBytes() - startBytes > maxBytes;
+      }
+      return exhausted;
+    }
+
+    /**
+     * @return true if the budget was found exhausted by the previous {@link #exhausted()} calls
+     */
+    boolean wasExhausted() {
+      return exhausted;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Op;
+
+/**
+ * Listener which receives the events produced during the assertion evaluation.
+ * Implementations are discovered via {@link java.util.ServiceLoader} once, when the library is initialized.
+ * If no implementation is registered, the events are not produced at all and no overhead is imposed.
+ * <p>
+ * Listener methods are called synchronously in the thread which evaluates the assertion, 
+ * possibly concurrently from different threads. They should be fast and must not throw.
+ */
+public interface EvaluationListener {
+  /**
+   * Called when an operation is successfully evaluated
+   *
+   * @param op    evaluated operation
+   * @param value evaluation result
+   * @param nanos time spent to evaluate the operation, including its operands, in nanoseconds
+   */
+  default void valueEvaluated(Op op, Object value, long nanos) {
+  }
+
+  /**
+   * Called when an operation evaluation throws an exception
+   *
+   * @param op        evaluated operation
+   * @param throwable exception thrown
+   * @param nanos     time spent to evaluate the operation, including its operands, in nanoseconds
+   */
+  default void exceptionThrown(Op op, Throwable throwable, long nanos) {
+  }
+
+  /**
+   * Called when an operation cannot be evaluated by the interpreter
+   *
+   * @param op unsupported operation
+   */
+  default void unsupportedOp(Op op) {
+  }
+
+  /**
+   * Called when the assertion cannot be interpreted, so the condition is evaluated directly
+   *
+   * @param condition condition
+   * @param result    condition result
+   */
+  default void fallbackTaken(AssertionCondition condition, boolean result) {
+  }
+}
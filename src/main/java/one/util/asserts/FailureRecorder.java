@@ -0,0 +1,396 @@
+package one.util.asserts;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.code.Location;
+import java.lang.reflect.code.Op;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static one.util.asserts.Node.*;
+
+/**
+ * Flight recorder of the recent assertion failures: a fixed-size ring buffer in the memory-mapped file,
+ * which survives the JVM crash. Every entry contains the site id (nest host class and source location),
+ * the timestamp, and the evaluated tree with op texts and compactly encoded values.
+ * <p>
+ * Writers claim the slots lock-free: the entry is encoded into a reusable per-thread buffer, then the slot
+ * sequence word is switched to "being written" with CAS, the entry is copied into the slot, and the sequence
+ * number is published with release semantics. A reader checks the sequence number before and after reading
+ * the slot (seqlock), so it never observes a partially written entry. A writer which cannot claim the slot
+ * after a bounded spin drops its entry, and the slots left in the "being written" state by a crashed process
+ * are emptied when the file is opened again. The site id and op texts are computed once per site, when
+ * its first failure is recorded, so recording builds no strings.
+ * Primitives and strings are encoded in binary; no user code is called for other values, so only their class
+ * name and identity hash code are recorded. If the tree doesn't fit the slot, only the root node is recorded.
+ * <p>
+ * Use {@link RefAsserts#setFailureRecorder(FailureRecorder)} to record assertion failures, and
+ * {@link #readAll(Path)} or {@link #main(String[])} to read the file offline.
+ */
+public final class FailureRecorder implements AutoCloseable {
+  private static final int MAGIC = 0x52454652;
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 64;
+  private static final int NEXT_OFFSET = 16;
+  private static final int SLOT_HEADER_SIZE = 20;
+  private static final int MAX_STRING_LENGTH = 100;
+
+  private static final byte KIND_VALUE = 0, KIND_EXCEPTION = 1, KIND_UNSUPPORTED = 2, KIND_NOT_EVALUATED = 3;
+  private static final byte TAG_NULL = 0, TAG_BOOLEAN = 1, TAG_BYTE = 2, TAG_SHORT = 3, TAG_CHAR = 4, TAG_INT = 5,
+          TAG_LONG = 6, TAG_FLOAT = 7, TAG_DOUBLE = 8, TAG_STRING = 9, TAG_OBJECT = 10;
+  /**
+   * Sequence word of the slot which is being written
+   */
+  private static final long WRITING = -1L;
+  /**
+   * Number of attempts to claim the slot which is being written by another writer, before the entry is dropped
+   */
+  private static final int MAX_SPINS = 1 << 10;
+
+  private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  private static final ClassValue<AtomicReference<Site>> SITES = new ClassValue<>() {
+    @Override
+    protected AtomicReference<Site> computeValue(Class<?> type) {
+      return new AtomicReference<>();
+    }
+  };
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private final int slots;
+  private final int slotSize;
+  private final ThreadLocal<ByteBuffer> scratch;
+
+  /**
+   * Site identity and decompiled op texts, computed once per site. Texts are indexed by the position
+   * of the op within the quoted lambda, so recording builds no strings. The ops synthesized during evaluation
+   * (which are not part of the lambda) are recorded by their name.
+   */
+  private record Site(Op root, byte[] id, Map<Op, String> texts) {
+    static Site of(Class<?> lambdaClass, Op root) {
+      AtomicReference<Site> ref = SITES.get(lambdaClass);
+      Site site = ref.get();
+      if (site == null || site.root != root) {
+        Location location = root.location();
+        String id = lambdaClass.getNestHost().getName() +
+                (location == null ? "" : ":" + location.line() + ":" + location.column());
+        Map<Op, String> texts = new IdentityHashMap<>();
+        root.traverse(texts, (map, element) -> {
+          if (element instanceof Op op) {
+            map.put(op, text(op));
+          }
+          return map;
+        });
+        site = new Site(root, id.getBytes(StandardCharsets.UTF_8), texts);
+        ref.set(site);
+      }
+      return site;
+    }
+
+    private static String text(Op op) {
+      try {
+        return Decompiler.DEFAULT.opText(op);
+      } catch (RuntimeException _) {
+        // Not an expression: never displayed
+        return op.opName();
+      }
+    }
+
+    String text(Op op) {
+      String text = texts.get(op);
+      return text == null ? op.opName() : text;
+    }
+  }
+
+  /**
+   * Opens the recorder. If the file exists and has the same layout, the recorded entries are preserved.
+   *
+   * @param file     file to map
+   * @param slots    number of the most recent failures to keep
+   * @param slotSize maximal size of the encoded failure in bytes
+   * @throws IOException if the file cannot be opened or mapped
+   */
+  public FailureRecorder(Path file, int slots, int slotSize) throws IOException {
+    if (slots <= 0 || slotSize <= SLOT_HEADER_SIZE) {
+      throw new IllegalArgumentException("Invalid layout: " + slots + " slots of " + slotSize + " bytes");
+    }
+    this.slots = slots;
+    this.slotSize = (slotSize + 7) & ~7;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * this.slotSize);
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != slots ||
+            buffer.getInt(12) != this.slotSize) {
+      for (int i = 0; i < buffer.capacity(); i++) {
+        buffer.put(i, (byte) 0);
+      }
+      buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, slots).putInt(12, this.slotSize);
+    } else {
+      // The previous process crashed while writing these slots: their entries are incomplete
+      for (int slot = 0; slot < slots; slot++) {
+        int offset = HEADER_SIZE + slot * this.slotSize;
+        if (buffer.getLong(offset) == WRITING) {
+          buffer.putLong(offset, 0);
+        }
+      }
+    }
+    int payloadSize = this.slotSize - SLOT_HEADER_SIZE;
+    this.scratch = ThreadLocal.withInitial(() -> ByteBuffer.allocate(payloadSize));
+  }
+
+  /**
+   * Records the failure
+   *
+   * @param condition failed condition
+   * @param root      root op of the quoted condition
+   * @param model     evaluated model
+   */
+  void record(AssertionCondition condition, Op root, Node model) {
+    Site site = Site.of(condition.getClass(), root);
+    ByteBuffer payload = scratch.get().clear();
+    try {
+      encode(payload, site, model, true);
+    } catch (BufferOverflowException _) {
+      payload.clear();
+      try {
+        encode(payload, site, model, false);
+      } catch (BufferOverflowException _) {
+        return;
+      }
+    }
+    long sequence = (long) LONGS.getAndAdd(buffer, NEXT_OFFSET, 1L);
+    int offset = HEADER_SIZE + (int) (sequence % slots) * slotSize;
+    if (!claim(offset, sequence)) return;
+    buffer.putLong(offset + 8, System.currentTimeMillis());
+    buffer.putInt(offset + 16, payload.position());
+    buffer.put(offset + SLOT_HEADER_SIZE, payload.array(), 0, payload.position());
+    // Stored sequence is one-based, so zero denotes an empty slot
+    LONGS.setRelease(buffer, offset, sequence + 1);
+  }
+
+  /**
+   * Marks the slot as being written, unless it already holds a newer entry
+   *
+   * @return false if the entry is obsolete, as the slot was overwritten by a newer one,
+   * or if another writer holds the slot for too long
+   */
+  private boolean claim(int offset, long sequence) {
+    for (int spins = 0; spins < MAX_SPINS; spins++) {
+      long current = (long) LONGS.getAcquire(buffer, offset);
+      if (current == WRITING) {
+        // Another writer lapped the ring: wait until it publishes its entry
+        Thread.onSpinWait();
+        continue;
+      }
+      // Stored sequence is one-based, so zero denotes an empty slot
+      if (current > sequence) return false;
+      if (LONGS.compareAndSet(buffer, offset, current, WRITING)) return true;
+    }
+    return false;
+  }
+
+  private static void encode(ByteBuffer out, Site site, Node model, boolean withChildren) {
+    out.putShort((short) site.id().length).put(site.id());
+    encodeNode(out, site, model, withChildren);
+  }
+
+  private static void encodeNode(ByteBuffer out, Site site, Node node, boolean withChildren) {
+    switch (node) {
+      case ValueNode valueNode -> {
+        out.put(KIND_VALUE);
+        putString(out, site.text(node.op()), Integer.MAX_VALUE);
+        encodeValue(out, valueNode.value());
+      }
+      case ExceptionNode exceptionNode -> {
+        out.put(KIND_EXCEPTION);
+        putString(out, site.text(node.op()), Integer.MAX_VALUE);
+        putString(out, exceptionNode.throwable().getClass().getName(), Integer.MAX_VALUE);
+        String message = exceptionNode.throwable().getMessage();
+        putString(out, message == null ? "" : message, MAX_STRING_LENGTH);
+      }
+      case UnsupportedNode _ -> {
+        out.put(KIND_UNSUPPORTED);
+        putString(out, site.text(node.op()), Integer.MAX_VALUE);
+        putString(out, node.op().getClass().getName(), Integer.MAX_VALUE);
+      }
+      case NotEvaluatedNode _ -> {
+        out.put(KIND_NOT_EVALUATED);
+        putString(out, site.text(node.op()), Integer.MAX_VALUE);
+      }
+    }
+    List<Node> children = withChildren ? node.children().stream()
+            .filter(c -> !(c instanceof ValueNode valueNode && valueNode.isTrivial())).toList() : List.of();
+    out.putShort((short) children.size());
+    for (Node child : children) {
+      encodeNode(out, site, child, true);
+    }
+  }
+
+  private static void encodeValue(ByteBuffer out, Object value) {
+    switch (value) {
+      case null -> out.put(TAG_NULL);
+      case Boolean b -> out.put(TAG_BOOLEAN).put((byte) (b ? 1 : 0));
+      case Byte b -> out.put(TAG_BYTE).put(b);
+      case Short s -> out.put(TAG_SHORT).putShort(s);
+      case Character c -> out.put(TAG_CHAR).putChar(c);
+      case Integer i -> out.put(TAG_INT).putInt(i);
+      case Long l -> out.put(TAG_LONG).putLong(l);
+      case Float f -> out.put(TAG_FLOAT).putFloat(f);
+      case Double d -> out.put(TAG_DOUBLE).putDouble(d);
+      case String s -> putString(out.put(TAG_STRING), s, MAX_STRING_LENGTH);
+      default -> putString(out.put(TAG_OBJECT), value.getClass().getName(), Integer.MAX_VALUE)
+              .putInt(System.identityHashCode(value));
+    }
+  }
+
+  /**
+   * Writes UTF-8 encoded string prefixed with its length, without intermediate allocations
+   */
+  private static ByteBuffer putString(ByteBuffer out, String str, int maxChars) {
+    int lengthPos = out.position();
+    out.putShort((short) 0);
+    int limit = Math.min(str.length(), maxChars);
+    for (int i = 0; i < limit; i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        out.put((byte) c);
+      } else if (c < 0x800) {
+        out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        out.put((byte) '?');
+      } else {
+        out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+      }
+    }
+    int length = out.position() - lengthPos - 2;
+    if (length > 0xFFFF) throw new BufferOverflowException();
+    return out.putShort(lengthPos, (short) length);
+  }
+
+  /**
+   * Reads all the recorded entries, from the oldest to the newest
+   *
+   * @param file recorder file
+   * @return list of rendered entries
+   * @throws IOException if the file cannot be read
+   */
+  public static List<String> readAll(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+        throw new IOException("Not a failure recorder file: " + file);
+      }
+      int slots = buffer.getInt(8);
+      int slotSize = buffer.getInt(12);
+      record Entry(long sequence, String text) {}
+      List<Entry> entries = new ArrayList<>();
+      for (int slot = 0; slot < slots; slot++) {
+        int offset = HEADER_SIZE + slot * slotSize;
+        long sequence = (long) LONGS.getAcquire(buffer, offset);
+        if (sequence <= 0) continue;
+        long timestamp = buffer.getLong(offset + 8);
+        int length = buffer.getInt(offset + 16);
+        ByteBuffer payload = buffer.slice(offset + SLOT_HEADER_SIZE, length);
+        StringBuilder sb = new StringBuilder();
+        try {
+          sb.append('#').append(sequence).append(' ').append(Instant.ofEpochMilli(timestamp))
+                  .append(' ').append(getString(payload)).append('\n');
+          decodeNode(payload, sb);
+        } catch (RuntimeException _) {
+          // Slot is being overwritten
+          continue;
+        }
+        // The slot reads above must not be reordered with the sequence re-check
+        VarHandle.acquireFence();
+        if ((long) LONGS.getAcquire(buffer, offset) == sequence) {
+          entries.add(new Entry(sequence, sb.toString()));
+        }
+      }
+      return entries.stream().sorted(Comparator.comparingLong(Entry::sequence)).map(Entry::text).toList();
+    }
+  }
+
+  private static void decodeNode(ByteBuffer in, StringBuilder sb) {
+    byte kind = in.get();
+    String text = getString(in);
+    String line = switch (kind) {
+      case KIND_VALUE -> text + " -> " + decodeValue(in);
+      case KIND_EXCEPTION -> {
+        String exception = getString(in);
+        String message = getString(in);
+        yield text + " -> throws " + (message.isEmpty() ? exception : exception + ": " + message);
+      }
+      case KIND_UNSUPPORTED -> "Unsupported node: " + text + " (class " + getString(in) + ")";
+      case KIND_NOT_EVALUATED -> text + " -> not evaluated";
+      default -> throw new IllegalStateException("Unknown node kind: " + kind);
+    };
+    int children = in.getShort();
+    for (int i = 0; i < children; i++) {
+      decodeNode(in, sb);
+    }
+    sb.append(line).append('\n');
+  }
+
+  private static String decodeValue(ByteBuffer in) {
+    byte tag = in.get();
+    if (tag == TAG_OBJECT) {
+      String className = getString(in);
+      return className + "@" + Integer.toHexString(in.getInt());
+    }
+    Object value = switch (tag) {
+      case TAG_NULL -> null;
+      case TAG_BOOLEAN -> in.get() != 0;
+      case TAG_BYTE -> in.get();
+      case TAG_SHORT -> in.getShort();
+      case TAG_CHAR -> in.getChar();
+      case TAG_INT -> in.getInt();
+      case TAG_LONG -> in.getLong();
+      case TAG_FLOAT -> in.getFloat();
+      case TAG_DOUBLE -> in.getDouble();
+      case TAG_STRING -> getString(in);
+      default -> throw new IllegalStateException("Unknown value tag: " + tag);
+    };
+    return DefaultValueFormatter.DEFAULT.format(value);
+  }
+
+  private static String getString(ByteBuffer in) {
+    int length = Short.toUnsignedInt(in.getShort());
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() throws IOException {
+    buffer.force();
+    channel.close();
+  }
+
+  /**
+   * Prints all the entries of the recorder file
+   *
+   * @param args path to the recorder file
+   * @throws IOException if the file cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("Usage: java " + FailureRecorder.class.getName() + " <file>");
+      System.exit(1);
+    }
+    readAll(Path.of(args[0])).forEach(System.out::println);
+  }
+}
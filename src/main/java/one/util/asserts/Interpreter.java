@@ -6,18 +6,16 @@ import java.lang.reflect.code.*;
 import java.lang.reflect.code.op.CoreOp;
 import java.lang.reflect.code.op.ExtendedOp;
 import java.lang.reflect.code.type.ArrayType;
-import java.lang.reflect.code.type.FunctionType;
 import java.lang.reflect.code.type.JavaType;
 import java.lang.reflect.code.type.MethodRef;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.DoubleBinaryOperator;
 import java.util.function.IntBinaryOperator;
 import java.util.function.LongBinaryOperator;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import static one.util.asserts.Node.*;
 
@@ -25,15 +23,99 @@ import static one.util.asserts.Node.*;
  * Expression interpreter
  */
 final class Interpreter {
+  static final String TIMING_PROPERTY = "one.util.asserts.timing";
+
+  private static volatile boolean timingEnabled = Boolean.getBoolean(TIMING_PROPERTY);
+
   private final Map<Value, Object> capturedValues;
-  private final MethodHandles.Lookup lookup;
+  private final Resolver resolver;
+  private final AssertionMetrics.SiteMetrics metrics;
+  private final ConstantFolder folder;
+  private final EvaluationBudget.Tracker budget;
+  private final boolean timing = timingEnabled;
+  /**
+   * Total time spent on the operands of the op being evaluated
+   */
+  private long operandNanos;
 
-  public Interpreter(Map<Value, Object> capturedValues, MethodHandles.Lookup lookup) {
+  Interpreter(Map<Value, Object> capturedValues, Resolver resolver, AssertionMetrics.SiteMetrics metrics,
+              ConstantFolder folder, EvaluationBudget.Tracker budget) {
     this.capturedValues = capturedValues;
-    this.lookup = lookup;
+    this.resolver = resolver;
+    this.metrics = metrics;
+    // Nothing to fold: skip the per-op lookups
+    this.folder = folder != null && folder.hasInvariants() ? folder : null;
+    this.budget = budget;
+  }
+
+  /**
+   * @param enabled whether to measure the evaluation time of every op
+   */
+  static void setTiming(boolean enabled) {
+    timingEnabled = enabled;
   }
 
   static Node buildModel(Quoted quoted) {
+    return buildModel(quoted, Resolver.DEFAULT, null, null);
+  }
+
+  /**
+   * @param quoted  quoted lambda to interpret
+   * @param metrics site metrics to report cache hits and misses to; null if not necessary
+   * @return evaluated model
+   */
+  static Node buildModel(Quoted quoted, AssertionMetrics.SiteMetrics metrics) {
+    return buildModel(quoted, Resolver.DEFAULT, metrics, null);
+  }
+
+  /**
+   * @param quoted   quoted lambda to interpret
+   * @param resolver resolver to resolve the referenced members with
+   * @param metrics  site metrics to report cache hits and misses to; null if not necessary
+   * @param folder   folder to reuse invariant subtrees from; null if not necessary
+   * @return evaluated model
+   */
+  static Node buildModel(Quoted quoted, Resolver resolver, AssertionMetrics.SiteMetrics metrics,
+                         ConstantFolder folder) {
+    return buildModel(quoted, List.of(), resolver, metrics, folder, null);
+  }
+
+  /**
+   * @param quoted   quoted lambda to interpret
+   * @param resolver resolver to resolve the referenced members with
+   * @param metrics  site metrics to report cache hits and misses to; null if not necessary
+   * @param folder   folder to reuse invariant subtrees from; null if not necessary
+   * @param budget   evaluation budget tracker; null if unlimited
+   * @return evaluated model
+   */
+  static Node buildModel(Quoted quoted, Resolver resolver, AssertionMetrics.SiteMetrics metrics,
+                         ConstantFolder folder, EvaluationBudget.Tracker budget) {
+    return buildModel(quoted, List.of(), resolver, metrics, folder, budget);
+  }
+
+  /**
+   * @param quoted    quoted lambda with parameters to interpret
+   * @param arguments values of lambda parameters
+   * @param resolver  resolver to resolve the referenced members with
+   * @return evaluated model
+   */
+  static Node buildModel(Quoted quoted, List<Object> arguments, Resolver resolver) {
+    return buildModel(quoted, arguments, resolver, null, null, null);
+  }
+
+  private static Node buildModel(Quoted quoted, List<Object> arguments, Resolver resolver,
+                                 AssertionMetrics.SiteMetrics metrics, ConstantFolder folder,
+                                 EvaluationBudget.Tracker budget) {
+    Node node = buildLambdaModel(quoted, arguments, resolver, metrics, folder, budget);
+    if (Listeners.LISTENER != null && node instanceof UnsupportedNode && node.op() == quoted.op()) {
+      Listeners.LISTENER.unsupportedOp(node.op());
+    }
+    return node;
+  }
+
+  private static Node buildLambdaModel(Quoted quoted, List<Object> arguments, Resolver resolver,
+                                       AssertionMetrics.SiteMetrics metrics, ConstantFolder folder,
+                                       EvaluationBudget.Tracker budget) {
     Op op = quoted.op();
     Map<Value, Object> capturedValues = quoted.capturedValues();
     if (op instanceof CoreOp.LambdaOp lambdaOp) {
@@ -43,11 +125,21 @@ final class Interpreter {
         return new UnsupportedNode(op, List.of());
       }
       Block block = blocks.getFirst();
+      List<Block.Parameter> parameters = block.parameters();
+      if (parameters.size() != arguments.size()) {
+        return new UnsupportedNode(op, List.of());
+      }
+      if (!arguments.isEmpty()) {
+        capturedValues = new HashMap<>(capturedValues);
+        for (int i = 0; i < arguments.size(); i++) {
+          capturedValues.put(parameters.get(i), arguments.get(i));
+        }
+      }
       List<Op> list = block.children().stream().filter(CoreOp.ReturnOp.class::isInstance).toList();
       if (list.size() != 1) {
         return new UnsupportedNode(op, List.of());
       }
-      return new Interpreter(capturedValues, MethodHandles.lookup()).buildModel(list.getFirst());
+      return new Interpreter(capturedValues, resolver, metrics, folder, budget).buildModel(list.getFirst());
     }
     return new UnsupportedNode(op, List.of());
   }
@@ -81,332 +173,546 @@ final class Interpreter {
   }
 
   Node buildModel(Op op) {
-    // TODO: initialized arrays
-    // TODO: new instance
-    // TODO: switch expression
-    // TODO: lambda?
-    // TODO: method ref?
-    return switch (op) {
-      case CoreOp.ReturnOp _, CoreOp.YieldOp _ -> buildModel(op.operands().getFirst());
-      case CoreOp.ConstantOp c -> new ValueNode(c, c.value(), List.of());
-      case CoreOp.FieldAccessOp.FieldLoadOp load -> {
-        VarHandle field;
-        try {
-          field = load.fieldDescriptor().resolveToHandle(lookup);
-        } catch (ReflectiveOperationException e) {
-          throw new RuntimeException(e);
-        }
-        List<Value> operands = load.operands();
-        if (!operands.isEmpty()) {
-          Node qualifier = buildModel(operands.getFirst());
-          if (!(qualifier instanceof ValueNode valNode)) {
-            yield qualifier.derivedFailure(op);
-          }
-          Object value = field.get(valNode.value());
-          yield new ValueNode(load, value, List.of(qualifier));
-        }
-        Object value = field.get();
-        yield new ValueNode(load, value, List.of());
+    if (budget != null && budget.exhausted()) {
+      return new NotEvaluatedNode(op, List.of());
+    }
+    if (folder == null) {
+      return evaluateAndNotify(op);
+    }
+    // Invariant subtree evaluated previously: listener is not notified, as nothing is evaluated
+    Node folded = folder.folded(op);
+    if (folded != null) {
+      return folded;
+    }
+    return folder.fold(op, evaluateAndNotify(op));
+  }
+
+  private Node evaluateAndNotify(Op op) {
+    if (Listeners.LISTENER == null && !timing) {
+      return evaluate(op);
+    }
+    long outerNanos = operandNanos;
+    operandNanos = 0;
+    long start = System.nanoTime();
+    Node node = evaluate(op);
+    long nanos = System.nanoTime() - start;
+    if (node.op() == op) {
+      if (Listeners.LISTENER != null) {
+        notify(Listeners.LISTENER, node, nanos);
       }
-      case CoreOp.QuotedOp quoted -> {
-        // TODO: lambdas; instance-bound MR; static method MR; constructor MR
-        CoreOp.LambdaOp lambdaOp = Util.extractLambda(quoted);
-        if (lambdaOp != null) {
-          CoreOp.InvokeOp invokeOp = lambdaOp.methodReference().orElse(null);
-          if (invokeOp != null) {
-            try {
-              MethodHandle handle = invokeOp.invokeDescriptor().resolveToHandle(lookup);
-              Class<?> aClass = toClass(lambdaOp.functionalInterface());
-              Method sam = Stream.of(aClass.getMethods()).filter(m -> Modifier.isAbstract(m.getModifiers()))
-                      .findFirst().orElseThrow(() -> new ReflectiveOperationException("No SAM found in " + aClass));
-              MethodType samMethodType = MethodType.methodType(sam.getReturnType(), sam.getParameterTypes());
-              MethodType dynamicType = toMethodType(lambdaOp.invokableType());
-              CallSite callSite = LambdaMetafactory.metafactory(lookup, sam.getName(), MethodType.methodType(aClass),
-                      samMethodType, handle, dynamicType);
-              Object lambda = callSite.dynamicInvoker().invoke();
-              yield new ValueNode(quoted, lambda, List.of());
-            } catch (Throwable e) {
-              yield new ExceptionNode(quoted, e, List.of());
-            }
-          }
-        }
-        yield new UnsupportedNode(quoted, List.of());
+      if (timing) {
+        node = node.withNanos(Math.max(0, nanos - operandNanos - TimerOverhead.NANOS));
       }
-      case CoreOp.InvokeOp inv -> {
-        MethodHandle method;
-        try {
-          method = inv.invokeDescriptor().resolveToHandle(lookup);
-        } catch (ReflectiveOperationException e) {
-          throw new RuntimeException(e);
-        }
-        List<Value> operands = inv.operands();
-        List<Node> operandNodes = new ArrayList<>();
-        List<Object> arguments = new ArrayList<>();
-        for (Value operand : operands) {
-          Node node = buildModel(operand);
-          operandNodes.add(node);
-          if (!(node instanceof ValueNode valNode)) {
-            yield node.derivedFailure(op, operandNodes);
-          }
-          arguments.add(valNode.value());
-        }
-        Object methodResult;
-        try {
-          methodResult = method.invokeWithArguments(arguments);
-        } catch (Throwable e) {
-          yield new ExceptionNode(inv, e, operandNodes);
+    }
+    operandNanos = outerNanos + nanos;
+    return node;
+  }
+
+  /**
+   * Calibrated cost of a single {@link System#nanoTime()} call, computed on the first use of timing
+   */
+  private static final class TimerOverhead {
+    static final long NANOS = calibrate();
+
+    private static long calibrate() {
+      long min = Long.MAX_VALUE;
+      for (int i = 0; i < 10_000; i++) {
+        long start = System.nanoTime();
+        min = Math.min(min, System.nanoTime() - start);
+      }
+      return min;
+    }
+  }
+
+  private static void notify(EvaluationListener listener, Node node, long nanos) {
+    switch (node) {
+      case ValueNode valueNode -> listener.valueEvaluated(node.op(), valueNode.value(), nanos);
+      case ExceptionNode exceptionNode -> {
+        if (node.children().stream().noneMatch(ExceptionNode.class::isInstance)) {
+          listener.exceptionThrown(node.op(), exceptionNode.throwable(), nanos);
         }
-        yield new ValueNode(inv, methodResult, operandNodes);
       }
-      case CoreOp.ArrayAccessOp.ArrayLoadOp _ -> {
-        Node array = buildModel(op.operands().getFirst());
-        if (!(array instanceof ValueNode arrayVal)) yield array.derivedFailure(op);
-        Node index = buildModel(op.operands().getLast());
-        Integer idx = intValue(index);
-        if (idx == null) yield index.derivedFailure(op, List.of(array, index));
-        yield new ValueNode(op, Array.get(arrayVal.value(), idx), List.of(array, index));
+      case UnsupportedNode _ -> {
+        if (node.children().stream().noneMatch(UnsupportedNode.class::isInstance)) {
+          listener.unsupportedOp(node.op());
+        }
       }
-      case CoreOp.ArrayLengthOp _ -> {
-        Node array = buildModel(op.operands().getFirst());
-        if (!(array instanceof ValueNode arrayVal)) yield array.derivedFailure(op);
-        yield new ValueNode(op, Array.getLength(arrayVal.value()), List.of(array));
+      case NotEvaluatedNode _ -> {
       }
-      case CoreOp.VarAccessOp.VarLoadOp load -> {
-        Value value = load.operands().getFirst();
-        Object obj = capturedValues.get(value);
-        if (obj instanceof CoreOp.Var<?> var) {
-          yield new ValueNode(load, var.value(), List.of());
+    }
+  }
+
+  /**
+   * Evaluates the op of a specific type
+   *
+   * @param <T> type of the op
+   */
+  @FunctionalInterface
+  private interface OpHandler<T extends Op> {
+    Node evaluate(Interpreter interpreter, T op);
+  }
+
+  private static final Map<Class<?>, OpHandler<?>> BUILT_IN_HANDLERS = builtInHandlers();
+
+  private static final ClassValue<OpHandler<Op>> HANDLERS = new ClassValue<>() {
+    @Override
+    protected OpHandler<Op> computeValue(Class<?> type) {
+      return findHandler(type);
+    }
+  };
+
+  private static Map<Class<?>, OpHandler<?>> builtInHandlers() {
+    Map<Class<?>, OpHandler<?>> handlers = new HashMap<>();
+    register(handlers, CoreOp.ReturnOp.class, (interpreter, op) -> interpreter.buildModel(op.operands().getFirst()));
+    register(handlers, CoreOp.YieldOp.class, (interpreter, op) -> interpreter.buildModel(op.operands().getFirst()));
+    register(handlers, CoreOp.ConstantOp.class, (_, op) -> new ValueNode(op, op.value(), List.of()));
+    register(handlers, CoreOp.FieldAccessOp.FieldLoadOp.class, Interpreter::fieldLoad);
+    register(handlers, CoreOp.QuotedOp.class, Interpreter::quoted);
+    register(handlers, CoreOp.InvokeOp.class, Interpreter::invoke);
+    register(handlers, CoreOp.ArrayAccessOp.ArrayLoadOp.class, Interpreter::arrayLoad);
+    register(handlers, CoreOp.ArrayLengthOp.class, Interpreter::arrayLength);
+    register(handlers, CoreOp.VarAccessOp.VarLoadOp.class, Interpreter::varLoad);
+    register(handlers, CoreOp.BinaryOp.class, Interpreter::binary);
+    register(handlers, CoreOp.BinaryTestOp.class, Interpreter::binaryTest);
+    register(handlers, CoreOp.NewOp.class, Interpreter::newOp);
+    register(handlers, CoreOp.NotOp.class, Interpreter::not);
+    register(handlers, CoreOp.NegOp.class, Interpreter::neg);
+    register(handlers, CoreOp.ConvOp.class, Interpreter::conv);
+    register(handlers, ExtendedOp.JavaConditionalExpressionOp.class, Interpreter::ternary);
+    register(handlers, ExtendedOp.JavaConditionalOp.class, Interpreter::conditional);
+    register(handlers, CoreOp.InstanceOfOp.class, Interpreter::instanceOf);
+    register(handlers, CoreOp.CastOp.class, Interpreter::cast);
+    return handlers;
+  }
+
+  private static <T extends Op> void register(Map<Class<?>, OpHandler<?>> handlers, Class<T> opClass,
+                                              OpHandler<T> handler) {
+    handlers.put(opClass, handler);
+  }
+
+  /**
+   * Finds the handler for the op class. User-supplied {@link CustomOpHandler} takes precedence
+   * over the built-in one declared for the same class. Otherwise, the most specific handler wins.
+   */
+  @SuppressWarnings("unchecked")
+  private static OpHandler<Op> findHandler(Class<?> type) {
+    for (Class<?> cls = type; cls != null && cls != Op.class; cls = cls.getSuperclass()) {
+      for (Class<?> candidate : Util.withInterfaces(cls)) {
+        CustomOpHandler<?> custom = CustomOpHandlers.forClass(candidate);
+        if (custom != null) {
+          return (interpreter, op) -> interpreter.custom(custom, op);
+        }
+        OpHandler<?> handler = BUILT_IN_HANDLERS.get(candidate);
+        if (handler != null) {
+          return (OpHandler<Op>) handler;
         }
-        yield new UnsupportedNode(load, List.of());
       }
-      case CoreOp.BinaryOp mathOp -> {
-        Node left = buildModel(mathOp.operands().getFirst());
-        Node right = buildModel(mathOp.operands().getLast());
-        if (!(left instanceof ValueNode leftValNode)) yield left.derivedFailure(op);
-        List<Node> children = List.of(left, right);
-        if (!(right instanceof ValueNode rightValNode)) yield right.derivedFailure(op, children);
-        Object leftVal = leftValNode.value();
-        Object rightVal = rightValNode.value();
-        yield switch (mathOp) {
-          case CoreOp.AddOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, Integer::sum, Long::sum, Float::sum, Double::sum), children);
-          case CoreOp.SubOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a - b, (a, b) -> a - b, (a, b) -> a - b, (a, b) -> a - b), children);
-          case CoreOp.MulOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a * b, (a, b) -> a * b, (a, b) -> a * b, (a, b) -> a * b), children);
-          case CoreOp.DivOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a / b, (a, b) -> a / b, (a, b) -> a / b, (a, b) -> a / b), children);
-          case CoreOp.ModOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a % b, (a, b) -> a % b, (a, b) -> a % b, (a, b) -> a % b), children);
-          case CoreOp.AndOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a & b, (a, b) -> a & b, null, null), children);
-          case CoreOp.OrOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a | b, (a, b) -> a | b, null, null), children);
-          case CoreOp.XorOp _ ->
-                  fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a ^ b, (a, b) -> a ^ b, null, null), children);
-          case CoreOp.AshrOp _ -> {
-            Object result = null;
-            if (rightVal instanceof Number amount) {
-              if (leftVal instanceof Integer operand) {
-                result = operand >> amount.intValue();
-              } else if (leftVal instanceof Long operand) {
-                result = operand >> amount.longValue();
-              }
-            }
-            yield fromValue(mathOp, result, children);
-          }
-          case CoreOp.LshrOp _ -> {
-            Object result = null;
-            if (rightVal instanceof Number amount) {
-              if (leftVal instanceof Integer operand) {
-                result = operand >>> amount.intValue();
-              } else if (leftVal instanceof Long operand) {
-                result = operand >>> amount.longValue();
-              }
-            }
-            yield fromValue(mathOp, result, children);
-          }
-          case CoreOp.LshlOp _ -> {
-            Object result = null;
-            if (rightVal instanceof Number amount) {
-              if (leftVal instanceof Integer operand) {
-                result = operand << amount.intValue();
-              } else if (leftVal instanceof Long operand) {
-                result = operand << amount.longValue();
-              }
-            }
-            yield fromValue(mathOp, result, children);
-          }
-        };
+    }
+    return UNSUPPORTED;
+  }
+
+  private static final OpHandler<Op> UNSUPPORTED = (_, op) -> new UnsupportedNode(op, List.of());
+
+  /**
+   * Checks the shape of the quoted lambda without evaluating it: the lambda must consist of a single
+   * return, and every op it always evaluates must have a handler. The ops in the branches of conditional
+   * operators are not checked, as the evaluation produces diagnostics unless the unsupported branch is taken. The result depends only on the code, so it can be
+   * cached. Even if the check passes, the evaluation may still produce {@link UnsupportedNode}, e.g. for
+   * an inaccessible member.
+   *
+   * @param quoted quoted lambda without parameters
+   * @return false if the lambda can never be interpreted
+   */
+  static boolean isSupported(Quoted quoted) {
+    if (!(quoted.op() instanceof CoreOp.LambdaOp lambdaOp)) return false;
+    List<Block> blocks = lambdaOp.body().blocks();
+    if (blocks.size() != 1 || !blocks.getFirst().parameters().isEmpty()) return false;
+    List<Op> list = blocks.getFirst().children().stream().filter(CoreOp.ReturnOp.class::isInstance).toList();
+    return list.size() == 1 && isSupported(list.getFirst());
+  }
+
+  private static boolean isSupported(Op op) {
+    if (HANDLERS.get(op.getClass()) == UNSUPPORTED) return false;
+    // The variable is read from the captured values, its declaration is not evaluated
+    if (op instanceof CoreOp.VarAccessOp) return true;
+    for (Value operand : op.operands()) {
+      if (operand instanceof Op.Result result && !isSupported(result.op())) return false;
+    }
+    // Nested bodies are evaluated from their entry block result. Only the ones which are always evaluated
+    // are checked: an unsupported op in a branch fails only if the branch is taken, as in the evaluation
+    List<Body> bodies = switch (op) {
+      case CoreOp.QuotedOp _ -> List.of();
+      case ExtendedOp.JavaConditionalOp _, ExtendedOp.JavaConditionalExpressionOp _ ->
+              op.children().isEmpty() ? List.of() : List.of(op.children().getFirst());
+      default -> op.children();
+    };
+    for (Body body : bodies) {
+      if (!isSupported(body.entryBlock().terminatingOp())) return false;
+    }
+    return true;
+  }
+
+  private Node evaluate(Op op) {
+    // TODO: initialized arrays
+    // TODO: new instance
+    // TODO: switch expression
+    // TODO: lambda?
+    // TODO: method ref?
+    return HANDLERS.get(op.getClass()).evaluate(this, op);
+  }
+
+  private <T extends Op> Node custom(CustomOpHandler<T> handler, Op op) {
+    List<Node> operandNodes = new ArrayList<>();
+    List<Object> arguments = new ArrayList<>();
+    for (Value operand : op.operands()) {
+      Node node = buildModel(operand);
+      operandNodes.add(node);
+      if (!(node instanceof ValueNode valNode)) {
+        return node.derivedFailure(op, operandNodes);
       }
-      case CoreOp.BinaryTestOp testOp -> {
-        Node left = buildModel(testOp.operands().getFirst());
-        Node right = buildModel(testOp.operands().getLast());
-        if (!(left instanceof ValueNode leftValNode)) yield left.derivedFailure(op);
-        List<Node> children = List.of(left, right);
-        if (!(right instanceof ValueNode rightValNode)) yield right.derivedFailure(op, children);
-        Object leftVal = leftValNode.value();
-        Object rightVal = rightValNode.value();
-        yield switch (testOp) {
-          case CoreOp.EqOp _ -> new ValueNode(testOp, leftVal.equals(rightVal), children);
-          case CoreOp.NeqOp _ -> new ValueNode(testOp, !leftVal.equals(rightVal), children);
-          case CoreOp.LtOp _ ->
-                  fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a < b, (a, b) -> a < b), children);
-          case CoreOp.LeOp _ ->
-                  fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a <= b, (a, b) -> a <= b), children);
-          case CoreOp.GtOp _ ->
-                  fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a > b, (a, b) -> a > b), children);
-          case CoreOp.GeOp _ ->
-                  fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a >= b, (a, b) -> a >= b), children);
-        };
+      arguments.add(valNode.value());
+    }
+    try {
+      return new ValueNode(op, handler.evaluate(handler.opClass().cast(op), arguments), operandNodes);
+    } catch (Throwable e) {
+      return new ExceptionNode(op, e, operandNodes);
+    }
+  }
+
+  private Node fieldLoad(CoreOp.FieldAccessOp.FieldLoadOp load) {
+    VarHandle field;
+    try {
+      field = resolver.field(load.fieldDescriptor(), metrics);
+    } catch (ReflectiveOperationException _) {
+      // Inaccessible field: fall back to the direct evaluation
+      return new UnsupportedNode(load, List.of());
+    }
+    List<Value> operands = load.operands();
+    if (!operands.isEmpty()) {
+      Node qualifier = buildModel(operands.getFirst());
+      if (!(qualifier instanceof ValueNode valNode)) {
+        return qualifier.derivedFailure(load);
       }
-      case CoreOp.NewOp newOp -> {
-        TypeElement resultType = newOp.resultType();
-        if (resultType instanceof ArrayType arrayType) {
-          List<Node> childNodes = new ArrayList<>();
-          IntStream.Builder dims = IntStream.builder();
-          for (Value value : newOp.operands()) {
-            // TODO: initialized arrays
-            Node node = buildModel(value);
-            childNodes.add(node);
-            Integer dim = intValue(node);
-            if (dim == null) yield node.derivedFailure(newOp, childNodes);
-            dims.add(dim);
-          }
-          Class<?> cls;
-          try {
-            cls = toClass(Util.deepComponentType(arrayType));
-          } catch (RuntimeException e) {
-            yield new ExceptionNode(newOp, e, childNodes);
-          }
-          yield new ValueNode(newOp, Array.newInstance(cls, dims.build().toArray()), childNodes);
-        }
-        List<Value> operands = newOp.operands();
-        List<Node> operandNodes = new ArrayList<>();
-        List<Object> arguments = new ArrayList<>();
-        for (Value operand : operands) {
-          Node node = buildModel(operand);
-          operandNodes.add(node);
-          if (!(node instanceof ValueNode valNode)) {
-            yield node.derivedFailure(op, operandNodes);
-          }
-          arguments.add(valNode.value());
-        }
+      Object value = field.get(valNode.value());
+      return new ValueNode(load, value, List.of(qualifier));
+    }
+    Object value = field.get();
+    return new ValueNode(load, value, List.of());
+  }
+
+  private Node quoted(CoreOp.QuotedOp quoted) {
+    // TODO: lambdas; instance-bound MR; static method MR; constructor MR
+    CoreOp.LambdaOp lambdaOp = Util.extractLambda(quoted);
+    if (lambdaOp != null) {
+      CoreOp.InvokeOp invokeOp = lambdaOp.methodReference().orElse(null);
+      if (invokeOp != null) {
         try {
-          Class<?>[] argTypes = newOp.constructorType().parameterTypes().stream()
-                  .map(this::toClass).toArray(Class[]::new);
-          Class<?> objType = toClass(newOp.type());
-          Object result = objType.getConstructor(argTypes).newInstance(arguments.toArray());
-          yield new ValueNode(newOp, result, operandNodes);
-        } catch (RuntimeException | NoSuchMethodException | InstantiationException | IllegalAccessException |
-                 InvocationTargetException e) {
-          yield new ExceptionNode(newOp, e, operandNodes);
-        }
-      }
-      case CoreOp.NotOp n -> {
-        Node operand = buildModel(n.operands().getFirst());
-        if (operand instanceof ValueNode valNode && valNode.value() instanceof Boolean val) {
-          yield new ValueNode(op, !val, List.of(operand));
-        } else {
-          yield operand.derivedFailure(n);
+          Object lambda = resolver.methodReference(new Resolver.MethodReference(invokeOp.invokeDescriptor(),
+                  (JavaType) lambdaOp.functionalInterface(), lambdaOp.invokableType()), metrics);
+          return new ValueNode(quoted, lambda, List.of());
+        } catch (Throwable e) {
+          return new ExceptionNode(quoted, e, List.of());
         }
       }
-      case CoreOp.NegOp n -> {
-        Node operand = buildModel(n.operands().getFirst());
-        if (!(operand instanceof ValueNode valNode)) yield operand.derivedFailure(n);
-        yield switch (valNode.value()) {
-          case Integer i -> new ValueNode(n, -i, List.of(operand));
-          case Long l -> new ValueNode(n, -l, List.of(operand));
-          case Float f -> new ValueNode(n, -f, List.of(operand));
-          case Double d -> new ValueNode(n, -d, List.of(operand));
-          default -> operand.derivedFailure(n);
-        };
+    }
+    return new UnsupportedNode(quoted, List.of());
+  }
+
+  private Node invoke(CoreOp.InvokeOp inv) {
+    MethodHandle method;
+    try {
+      method = resolver.method(inv.invokeDescriptor(), metrics);
+    } catch (ReflectiveOperationException _) {
+      // Inaccessible method: fall back to the direct evaluation
+      return new UnsupportedNode(inv, List.of());
+    }
+    List<Value> operands = inv.operands();
+    List<Node> operandNodes = new ArrayList<>();
+    List<Object> arguments = new ArrayList<>();
+    for (Value operand : operands) {
+      Node node = buildModel(operand);
+      operandNodes.add(node);
+      if (!(node instanceof ValueNode valNode)) {
+        return node.derivedFailure(inv, operandNodes);
       }
-      case CoreOp.ConvOp conv -> {
-        Node operand = buildModel(conv.operands().getFirst());
-        if (!(operand instanceof ValueNode valNode)) {
-          yield operand.derivedFailure(conv);
+      arguments.add(valNode.value());
+    }
+    Object methodResult;
+    try {
+      methodResult = method.invokeWithArguments(arguments);
+    } catch (Throwable e) {
+      return new ExceptionNode(inv, e, operandNodes);
+    }
+    return new ValueNode(inv, methodResult, operandNodes);
+  }
+
+  private Node arrayLoad(CoreOp.ArrayAccessOp.ArrayLoadOp op) {
+    Node array = buildModel(op.operands().getFirst());
+    if (!(array instanceof ValueNode arrayVal)) return array.derivedFailure(op);
+    Node index = buildModel(op.operands().getLast());
+    Integer idx = intValue(index);
+    if (idx == null) return index.derivedFailure(op, List.of(array, index));
+    List<Node> children = List.of(array, index);
+    Object arr = arrayVal.value();
+    if (arr == null) return new ExceptionNode(op, new NullPointerException("Cannot load from null array"), children);
+    try {
+      return new ValueNode(op, ArrayHandles.forClass(arr.getClass()).get(arr, idx), children);
+    } catch (Throwable e) {
+      return new ExceptionNode(op, e, children);
+    }
+  }
+
+  private Node arrayLength(CoreOp.ArrayLengthOp op) {
+    Node array = buildModel(op.operands().getFirst());
+    if (!(array instanceof ValueNode arrayVal)) return array.derivedFailure(op);
+    Object arr = arrayVal.value();
+    if (arr == null) {
+      return new ExceptionNode(op, new NullPointerException("Cannot read the array length"), List.of(array));
+    }
+    try {
+      return new ValueNode(op, ArrayHandles.forClass(arr.getClass()).length(arr), List.of(array));
+    } catch (Throwable e) {
+      return new ExceptionNode(op, e, List.of(array));
+    }
+  }
+
+  private Node varLoad(CoreOp.VarAccessOp.VarLoadOp load) {
+    Value value = load.operands().getFirst();
+    Object obj = capturedValues.get(value);
+    if (obj instanceof CoreOp.Var<?> var) {
+      return new ValueNode(load, var.value(), List.of());
+    }
+    // Lambda parameter: var initialized with block parameter and never reassigned
+    if (value instanceof Op.Result result && result.op() instanceof CoreOp.VarOp varOp &&
+            varOp.operands().size() == 1 && varOp.operands().getFirst() instanceof Block.Parameter parameter &&
+            capturedValues.containsKey(parameter) &&
+            result.uses().stream().allMatch(use -> use.op() instanceof CoreOp.VarAccessOp.VarLoadOp)) {
+      return new ValueNode(load, capturedValues.get(parameter), List.of());
+    }
+    return new UnsupportedNode(load, List.of());
+  }
+
+  private Node binary(CoreOp.BinaryOp mathOp) {
+    Node left = buildModel(mathOp.operands().getFirst());
+    Node right = buildModel(mathOp.operands().getLast());
+    if (!(left instanceof ValueNode leftValNode)) return left.derivedFailure(mathOp);
+    List<Node> children = List.of(left, right);
+    if (!(right instanceof ValueNode rightValNode)) return right.derivedFailure(mathOp, children);
+    Object leftVal = leftValNode.value();
+    Object rightVal = rightValNode.value();
+    return switch (mathOp) {
+      case CoreOp.AddOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, Integer::sum, Long::sum, Float::sum, Double::sum), children);
+      case CoreOp.SubOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a - b, (a, b) -> a - b, (a, b) -> a - b, (a, b) -> a - b), children);
+      case CoreOp.MulOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a * b, (a, b) -> a * b, (a, b) -> a * b, (a, b) -> a * b), children);
+      case CoreOp.DivOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a / b, (a, b) -> a / b, (a, b) -> a / b, (a, b) -> a / b), children);
+      case CoreOp.ModOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a % b, (a, b) -> a % b, (a, b) -> a % b, (a, b) -> a % b), children);
+      case CoreOp.AndOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a & b, (a, b) -> a & b, null, null), children);
+      case CoreOp.OrOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a | b, (a, b) -> a | b, null, null), children);
+      case CoreOp.XorOp _ ->
+              fromValue(mathOp, doMath(leftVal, rightVal, (a, b) -> a ^ b, (a, b) -> a ^ b, null, null), children);
+      case CoreOp.AshrOp _ -> {
+        Object result = null;
+        if (rightVal instanceof Number amount) {
+          if (leftVal instanceof Integer operand) {
+            result = operand >> amount.intValue();
+          } else if (leftVal instanceof Long operand) {
+            result = operand >> amount.longValue();
+          }
         }
-        Object result = convert(conv.resultType(), valNode.value());
-        yield fromValue(conv, result, List.of(operand));
+        yield fromValue(mathOp, result, children);
       }
-      case ExtendedOp.JavaConditionalExpressionOp ternary -> {
-        List<Body> children = ternary.children();
-        if (children.size() != 3) {
-          yield new UnsupportedNode(ternary, List.of());
-        }
-        Node condition = buildModel(children.getFirst().entryBlock().terminatingOp());
-        if (!(condition instanceof ValueNode condValNode) || !(condValNode.value() instanceof Boolean cond)) {
-          yield condition.derivedFailure(ternary, List.of(condition));
-        }
-        Node branch = buildModel(children.get(cond ? 1 : 2).entryBlock().terminatingOp());
-        if (!(branch instanceof ValueNode thenValNode)) {
-          yield branch.derivedFailure(ternary, List.of(condition, branch));
+      case CoreOp.LshrOp _ -> {
+        Object result = null;
+        if (rightVal instanceof Number amount) {
+          if (leftVal instanceof Integer operand) {
+            result = operand >>> amount.intValue();
+          } else if (leftVal instanceof Long operand) {
+            result = operand >>> amount.longValue();
+          }
         }
-        yield new ValueNode(ternary, thenValNode.value(), List.of(condition, branch));
+        yield fromValue(mathOp, result, children);
       }
-      case ExtendedOp.JavaConditionalOp cond -> {
-        boolean isAnd = op instanceof ExtendedOp.JavaConditionalAndOp;
-        boolean value = isAnd;
-        List<Node> nodes = new ArrayList<>();
-        for (Body child : cond.children()) {
-          Op term = child.entryBlock().terminatingOp();
-          Node node = buildModel(term);
-          nodes.add(node);
-          if (!(node instanceof ValueNode valNode) || !(valNode.value() instanceof Boolean next)) {
-            yield node.derivedFailure(cond, nodes);
-          }
-          value = next;
-          if (next != isAnd) {
-            break;
+      case CoreOp.LshlOp _ -> {
+        Object result = null;
+        if (rightVal instanceof Number amount) {
+          if (leftVal instanceof Integer operand) {
+            result = operand << amount.intValue();
+          } else if (leftVal instanceof Long operand) {
+            result = operand << amount.longValue();
           }
         }
-        yield new ValueNode(cond, value, nodes);
+        yield fromValue(mathOp, result, children);
       }
-      case CoreOp.InstanceOfOp instanceOf -> {
-        Node operand = buildModel(instanceOf.operands().getFirst());
-        if (!(operand instanceof ValueNode valNode)) {
-          yield operand.derivedFailure(instanceOf);
-        }
-        if (!(instanceOf.type() instanceof JavaType javaType)) {
-          yield new UnsupportedNode(instanceOf, List.of(operand));
-        }
-        Class<?> aClass;
-        try {
-          aClass = javaType.toNominalDescriptor().resolveConstantDesc(lookup);
-        } catch (ReflectiveOperationException e) {
-          yield new ExceptionNode(instanceOf, e, List.of(operand));
-        }
-        yield new ValueNode(instanceOf, aClass.isInstance(valNode.value()), List.of(operand));
+    };
+  }
+
+  private Node binaryTest(CoreOp.BinaryTestOp testOp) {
+    Node left = buildModel(testOp.operands().getFirst());
+    Node right = buildModel(testOp.operands().getLast());
+    if (!(left instanceof ValueNode leftValNode)) return left.derivedFailure(testOp);
+    List<Node> children = List.of(left, right);
+    if (!(right instanceof ValueNode rightValNode)) return right.derivedFailure(testOp, children);
+    Object leftVal = leftValNode.value();
+    Object rightVal = rightValNode.value();
+    return switch (testOp) {
+      case CoreOp.EqOp _ -> new ValueNode(testOp, leftVal.equals(rightVal), children);
+      case CoreOp.NeqOp _ -> new ValueNode(testOp, !leftVal.equals(rightVal), children);
+      case CoreOp.LtOp _ ->
+              fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a < b, (a, b) -> a < b), children);
+      case CoreOp.LeOp _ ->
+              fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a <= b, (a, b) -> a <= b), children);
+      case CoreOp.GtOp _ ->
+              fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a > b, (a, b) -> a > b), children);
+      case CoreOp.GeOp _ ->
+              fromValue(testOp, compTest(leftVal, rightVal, (a, b) -> a >= b, (a, b) -> a >= b), children);
+    };
+  }
+
+  private Node newOp(CoreOp.NewOp newOp) {
+    TypeElement resultType = newOp.resultType();
+    if (resultType instanceof ArrayType arrayType) {
+      List<Node> childNodes = new ArrayList<>();
+      List<Integer> dims = new ArrayList<>();
+      for (Value value : newOp.operands()) {
+        // TODO: initialized arrays
+        Node node = buildModel(value);
+        childNodes.add(node);
+        Integer dim = intValue(node);
+        if (dim == null) return node.derivedFailure(newOp, childNodes);
+        dims.add(dim);
       }
-      case CoreOp.CastOp castOp -> {
-        Node operand = buildModel(castOp.operands().getFirst());
-        if (!(operand instanceof ValueNode valNode)) {
-          yield operand.derivedFailure(castOp);
-        }
-        if (!(castOp.type() instanceof JavaType javaType)) {
-          yield new UnsupportedNode(castOp, List.of(operand));
-        }
-        Class<?> aClass;
-        try {
-          aClass = javaType.toNominalDescriptor().resolveConstantDesc(lookup);
-        } catch (ReflectiveOperationException e) {
-          yield new ExceptionNode(castOp, e, List.of(operand));
-        }
-        yield new ValueNode(castOp, aClass.cast(valNode.value()), List.of(operand));
+      try {
+        return new ValueNode(newOp, ArrayHandles.forClass(toClass(arrayType)).newArray(dims), childNodes);
+      } catch (Throwable e) {
+        return new ExceptionNode(newOp, e, childNodes);
       }
-      // TODO: new instance
-      // TODO: switch expression
-      // TODO: lambda?
-      // TODO: method ref?
-      default -> new UnsupportedNode(op, List.of());
+    }
+    List<Value> operands = newOp.operands();
+    List<Node> operandNodes = new ArrayList<>();
+    List<Object> arguments = new ArrayList<>();
+    for (Value operand : operands) {
+      Node node = buildModel(operand);
+      operandNodes.add(node);
+      if (!(node instanceof ValueNode valNode)) {
+        return node.derivedFailure(newOp, operandNodes);
+      }
+      arguments.add(valNode.value());
+    }
+    try {
+      Class<?>[] argTypes = newOp.constructorType().parameterTypes().stream()
+              .map(this::toClass).toArray(Class[]::new);
+      Class<?> objType = toClass(newOp.type());
+      Object result = objType.getConstructor(argTypes).newInstance(arguments.toArray());
+      return new ValueNode(newOp, result, operandNodes);
+    } catch (RuntimeException | NoSuchMethodException | InstantiationException | IllegalAccessException |
+             InvocationTargetException e) {
+      return new ExceptionNode(newOp, e, operandNodes);
+    }
+  }
+
+  private Node not(CoreOp.NotOp n) {
+    Node operand = buildModel(n.operands().getFirst());
+    if (operand instanceof ValueNode valNode && valNode.value() instanceof Boolean val) {
+      return new ValueNode(n, !val, List.of(operand));
+    }
+    return operand.derivedFailure(n);
+  }
+
+  private Node neg(CoreOp.NegOp n) {
+    Node operand = buildModel(n.operands().getFirst());
+    if (!(operand instanceof ValueNode valNode)) return operand.derivedFailure(n);
+    return switch (valNode.value()) {
+      case Integer i -> new ValueNode(n, -i, List.of(operand));
+      case Long l -> new ValueNode(n, -l, List.of(operand));
+      case Float f -> new ValueNode(n, -f, List.of(operand));
+      case Double d -> new ValueNode(n, -d, List.of(operand));
+      default -> operand.derivedFailure(n);
     };
   }
 
-  private MethodType toMethodType(FunctionType functionType) {
-    Class<?> rType = toClass(functionType.returnType());
-    Class<?>[] pTypes = functionType.parameterTypes().stream().map(this::toClass).toArray(Class[]::new);
-    return MethodType.methodType(rType, pTypes);
+  private Node conv(CoreOp.ConvOp conv) {
+    Node operand = buildModel(conv.operands().getFirst());
+    if (!(operand instanceof ValueNode valNode)) {
+      return operand.derivedFailure(conv);
+    }
+    Object result = convert(conv.resultType(), valNode.value());
+    return fromValue(conv, result, List.of(operand));
+  }
+
+  private Node ternary(ExtendedOp.JavaConditionalExpressionOp ternary) {
+    List<Body> children = ternary.children();
+    if (children.size() != 3) {
+      return new UnsupportedNode(ternary, List.of());
+    }
+    Node condition = buildModel(children.getFirst().entryBlock().terminatingOp());
+    if (!(condition instanceof ValueNode condValNode) || !(condValNode.value() instanceof Boolean cond)) {
+      return condition.derivedFailure(ternary, List.of(condition));
+    }
+    Node branch = buildModel(children.get(cond ? 1 : 2).entryBlock().terminatingOp());
+    if (!(branch instanceof ValueNode thenValNode)) {
+      return branch.derivedFailure(ternary, List.of(condition, branch));
+    }
+    return new ValueNode(ternary, thenValNode.value(), List.of(condition, branch));
+  }
+
+  private Node conditional(ExtendedOp.JavaConditionalOp cond) {
+    boolean isAnd = cond instanceof ExtendedOp.JavaConditionalAndOp;
+    boolean value = isAnd;
+    List<Node> nodes = new ArrayList<>();
+    for (Body child : cond.children()) {
+      Op term = child.entryBlock().terminatingOp();
+      Node node = buildModel(term);
+      nodes.add(node);
+      if (!(node instanceof ValueNode valNode) || !(valNode.value() instanceof Boolean next)) {
+        return node.derivedFailure(cond, nodes);
+      }
+      value = next;
+      if (next != isAnd) {
+        break;
+      }
+    }
+    return new ValueNode(cond, value, nodes);
+  }
+
+  private Node instanceOf(CoreOp.InstanceOfOp instanceOf) {
+    Node operand = buildModel(instanceOf.operands().getFirst());
+    if (!(operand instanceof ValueNode valNode)) {
+      return operand.derivedFailure(instanceOf);
+    }
+    if (!(instanceOf.type() instanceof JavaType javaType)) {
+      return new UnsupportedNode(instanceOf, List.of(operand));
+    }
+    Class<?> aClass;
+    try {
+      aClass = resolver.type(javaType, metrics);
+    } catch (ReflectiveOperationException e) {
+      return new ExceptionNode(instanceOf, e, List.of(operand));
+    }
+    return new ValueNode(instanceOf, aClass.isInstance(valNode.value()), List.of(operand));
+  }
+
+  private Node cast(CoreOp.CastOp castOp) {
+    Node operand = buildModel(castOp.operands().getFirst());
+    if (!(operand instanceof ValueNode valNode)) {
+      return operand.derivedFailure(castOp);
+    }
+    if (!(castOp.type() instanceof JavaType javaType)) {
+      return new UnsupportedNode(castOp, List.of(operand));
+    }
+    Class<?> aClass;
+    try {
+      aClass = resolver.type(javaType, metrics);
+    } catch (ReflectiveOperationException e) {
+      return new ExceptionNode(castOp, e, List.of(operand));
+    }
+    return new ValueNode(castOp, aClass.cast(valNode.value()), List.of(operand));
   }
 
   private Class<?> toClass(TypeElement typeElement) {
@@ -414,7 +720,7 @@ final class Interpreter {
       throw new UnsupportedOperationException("Not a Java type: " + typeElement);
     }
     try {
-      return javaType.toNominalDescriptor().resolveConstantDesc(lookup);
+      return resolver.type(javaType, metrics);
     } catch (ReflectiveOperationException e) {
       throw new RuntimeException(e);
     }
@@ -482,8 +788,8 @@ final class Interpreter {
 
   private static Integer intValue(Node node) {
     return switch (node) {
-      case ValueNode(_, Integer i, _) -> i;
-      case ValueNode(_, Character c, _) -> (int) c;
+      case ValueNode(_, Integer i, _, _) -> i;
+      case ValueNode(_, Character c, _, _) -> (int) c;
       default -> null;
     };
   }
@@ -0,0 +1,144 @@
+package one.util.asserts;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formatter which writes the evaluated tree as JSON, for consumption by log pipelines.
+ * Every node is written as an object with the following fields:
+ * <ul>
+ *   <li>{@code op} &mdash; decompiled text of the subexpression;</li>
+ *   <li>{@code kind} &mdash; one of {@code value}, {@code exception}, {@code unsupported}, {@code notEvaluated};</li>
+ *   <li>{@code value} and {@code type} &mdash; rendered value and its class name (for {@code value} kind);</li>
+ *   <li>{@code size} &mdash; number of elements (or chars) of the value, if it was truncated by a snapshot
+ *   (see {@link CapturePolicy#SNAPSHOT});</li>
+ *   <li>{@code exception} and {@code message} &mdash; exception class name and message (for {@code exception} kind);</li>
+ *   <li>{@code nanos} &mdash; evaluation time of the op itself, if measured (see {@link RefAsserts#setTiming(boolean)});</li>
+ *   <li>{@code children} &mdash; array of the subexpression nodes.</li>
+ * </ul>
+ * As in the default format, trivial nodes (like constants) are omitted. Values are rendered and truncated
+ * the same way as in the default format. The output is streamed directly to the supplied {@link Writer}
+ * or {@link OutputStream}, so many failures can be written to a single file (e.g., one per line):
+ * see {@link RefAssertionError#writeJson(Writer)}.
+ */
+public final class JsonAssertionFormatter implements AssertionFormatter {
+  private final ValueFormatter valueFormatter;
+  private final Decompiler decompiler;
+
+  public JsonAssertionFormatter() {
+    this(DefaultValueFormatter.DEFAULT, Decompiler.DEFAULT);
+  }
+
+  JsonAssertionFormatter(ValueFormatter valueFormatter, Decompiler decompiler) {
+    this.valueFormatter = valueFormatter;
+    this.decompiler = decompiler;
+  }
+
+  @Override
+  public String formatAssertion(Node node) {
+    StringWriter writer = new StringWriter();
+    try {
+      write(node, writer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Writes the node tree as UTF-8 encoded JSON. The stream is flushed but not closed.
+   *
+   * @param node   root node
+   * @param output stream to write to
+   * @throws IOException if the stream throws
+   */
+  void write(Node node, OutputStream output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+    write(node, writer);
+    writer.flush();
+  }
+
+  /**
+   * Writes the node tree as JSON. The writer is neither flushed nor closed.
+   *
+   * @param node   root node
+   * @param writer writer to write to
+   * @throws IOException if the writer throws
+   */
+  void write(Node node, Writer writer) throws IOException {
+    writer.write("{\"op\":");
+    writeString(writer, decompiler.opText(node.op()));
+    switch (node) {
+      case Node.ValueNode valueNode -> {
+        writer.write(",\"kind\":\"value\",\"value\":");
+        writeString(writer, valueFormatter.format(valueNode.value()));
+        String type = switch (valueNode.value()) {
+          case null -> null;
+          case ValueSnapshot.Rendered _ -> null;
+          case ValueSnapshot.Copy copy -> copy.typeName();
+          case ValueSnapshot.Mismatch _ -> Boolean.class.getName();
+          case Object value -> value.getClass().getName();
+        };
+        if (type != null) {
+          writer.write(",\"type\":");
+          writeString(writer, type);
+        }
+        if (valueNode.value() instanceof ValueSnapshot.Copy copy) {
+          writer.write(",\"size\":");
+          writer.write(Integer.toString(copy.size()));
+        }
+        writeNanos(writer, valueNode.nanos());
+      }
+      case Node.ExceptionNode exceptionNode -> {
+        writer.write(",\"kind\":\"exception\",\"exception\":");
+        writeString(writer, exceptionNode.throwable().getClass().getName());
+        String message = exceptionNode.throwable().getMessage();
+        if (message != null) {
+          writer.write(",\"message\":");
+          writeString(writer, message);
+        }
+        writeNanos(writer, exceptionNode.nanos());
+      }
+      case Node.UnsupportedNode _ -> writer.write(",\"kind\":\"unsupported\"");
+      case Node.NotEvaluatedNode _ -> writer.write(",\"kind\":\"notEvaluated\"");
+    }
+    writer.write(",\"children\":[");
+    boolean first = true;
+    for (Node child : node.children()) {
+      if (child instanceof Node.ValueNode valueNode && valueNode.isTrivial()) continue;
+      if (!first) writer.write(',');
+      write(child, writer);
+      first = false;
+    }
+    writer.write("]}");
+  }
+
+  private static void writeNanos(Writer writer, long nanos) throws IOException {
+    if (nanos >= 0) {
+      writer.write(",\"nanos\":");
+      writer.write(Long.toString(nanos));
+    }
+  }
+
+  private static void writeString(Writer writer, String str) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      switch (c) {
+        case '"' -> writer.write("\\\"");
+        case '\\' -> writer.write("\\\\");
+        case '\n' -> writer.write("\\n");
+        case '\r' -> writer.write("\\r");
+        case '\t' -> writer.write("\\t");
+        default -> {
+          if (c < 32) {
+            writer.write(String.format("\\u%04x", (int) c));
+          } else {
+            writer.write(c);
+          }
+        }
+      }
+    }
+    writer.write('"');
+  }
+}
@@ -0,0 +1,48 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Op;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Holder for the registered {@link EvaluationListener}
+ */
+final class Listeners {
+  /**
+   * Registered listener or null if there's none. As the field is static final,
+   * JIT treats it as a constant, so null-checks are folded when no listener is registered.
+   */
+  static final EvaluationListener LISTENER = load();
+
+  private static EvaluationListener load() {
+    List<EvaluationListener> listeners = ServiceLoader.load(EvaluationListener.class).stream()
+            .map(ServiceLoader.Provider::get).toList();
+    return switch (listeners.size()) {
+      case 0 -> null;
+      case 1 -> listeners.getFirst();
+      default -> new Composite(listeners);
+    };
+  }
+
+  private record Composite(List<EvaluationListener> listeners) implements EvaluationListener {
+    @Override
+    public void valueEvaluated(Op op, Object value, long nanos) {
+      listeners.forEach(l -> l.valueEvaluated(op, value, nanos));
+    }
+
+    @Override
+    public void exceptionThrown(Op op, Throwable throwable, long nanos) {
+      listeners.forEach(l -> l.exceptionThrown(op, throwable, nanos));
+    }
+
+    @Override
+    public void unsupportedOp(Op op) {
+      listeners.forEach(l -> l.unsupportedOp(op));
+    }
+
+    @Override
+    public void fallbackTaken(AssertionCondition condition, boolean result) {
+      listeners.forEach(l -> l.fallbackTaken(condition, result));
+    }
+  }
+}
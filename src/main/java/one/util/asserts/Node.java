@@ -17,10 +17,30 @@ sealed interface Node {
     return new UnsupportedNode(op, children);
   }
 
+  /**
+   * @param nanos time spent to evaluate the op itself, excluding its operands
+   * @return node with the evaluation time; this node if the time is not tracked for this kind of nodes
+   */
+  default Node withNanos(long nanos) {
+    return this;
+  }
+
   record UnsupportedNode(Op op, List<Node> children) implements Node {
   }
 
-  record ValueNode(Op op, Object value, List<Node> children) implements Node {
+  /**
+   * @param nanos time spent to evaluate the op itself, excluding its operands; -1 if not measured
+   */
+  record ValueNode(Op op, Object value, List<Node> children, long nanos) implements Node {
+    ValueNode(Op op, Object value, List<Node> children) {
+      this(op, value, children, -1);
+    }
+
+    @Override
+    public Node withNanos(long nanos) {
+      return new ValueNode(op, value, children, nanos);
+    }
+
     boolean isTrivial() {
       return children.isEmpty() && op instanceof CoreOp.ConstantOp ||
               op instanceof CoreOp.QuotedOp ||
@@ -33,7 +53,29 @@ sealed interface Node {
     }
   }
 
-  record ExceptionNode(Op op, Throwable throwable, List<Node> children) implements Node {
+  /**
+   * Op which was not evaluated, as the {@link EvaluationBudget} was exhausted
+   */
+  record NotEvaluatedNode(Op op, List<Node> children) implements Node {
+    @Override
+    public Node derivedFailure(Op op, List<Node> children) {
+      return new NotEvaluatedNode(op, children);
+    }
+  }
+
+  /**
+   * @param nanos time spent to evaluate the op itself, excluding its operands; -1 if not measured
+   */
+  record ExceptionNode(Op op, Throwable throwable, List<Node> children, long nanos) implements Node {
+    ExceptionNode(Op op, Throwable throwable, List<Node> children) {
+      this(op, throwable, children, -1);
+    }
+
+    @Override
+    public Node withNanos(long nanos) {
+      return new ExceptionNode(op, throwable, children, nanos);
+    }
+
     @Override
     public Node derivedFailure(Op op, List<Node> children) {
       return new ExceptionNode(op, throwable, children);
@@ -0,0 +1,10 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Quotable;
+import java.util.function.DoublePredicate;
+
+/**
+ * Element condition for {@link RefAsserts#assertAllMatch(double[], QuotableDoublePredicate)}
+ */
+public interface QuotableDoublePredicate extends DoublePredicate, Quotable {
+}
@@ -0,0 +1,10 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Quotable;
+import java.util.function.IntPredicate;
+
+/**
+ * Element condition for {@link RefAsserts#assertAllMatch(int[], QuotableIntPredicate)}
+ */
+public interface QuotableIntPredicate extends IntPredicate, Quotable {
+}
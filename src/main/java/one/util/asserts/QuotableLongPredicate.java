@@ -0,0 +1,10 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Quotable;
+import java.util.function.LongPredicate;
+
+/**
+ * Element condition for {@link RefAsserts#assertAllMatch(long[], QuotableLongPredicate)}
+ */
+public interface QuotableLongPredicate extends LongPredicate, Quotable {
+}
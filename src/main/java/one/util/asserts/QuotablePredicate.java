@@ -0,0 +1,12 @@
+package one.util.asserts;
+
+import java.lang.reflect.code.Quotable;
+import java.util.function.Predicate;
+
+/**
+ * Element condition for {@link RefAsserts#assertAllMatch(java.util.Collection, QuotablePredicate)}
+ *
+ * @param <T> type of the element
+ */
+public interface QuotablePredicate<T> extends Predicate<T>, Quotable {
+}
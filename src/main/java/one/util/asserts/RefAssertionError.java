@@ -0,0 +1,98 @@
+package one.util.asserts;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serial;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Assertion failure which renders its message on the first request. Until then, it keeps the evaluated trace
+ * with bounded snapshots of the values (see {@link CapturePolicy#SNAPSHOT}): the copied containers still refer
+ * to their first elements, and other objects are referenced as is. Once the message is rendered, either
+ * by {@link #getMessage()} or by {@link #detach()}, the trace is replaced with the message and its JSON form
+ * (see {@link #writeJson(Writer)}), so no evaluated objects are retained, and the heap used by the error
+ * is proportional to its message size.
+ */
+public final class RefAssertionError extends AssertionError {
+  @Serial
+  private static final long serialVersionUID = 1L;
+
+  private transient Supplier<String> renderer;
+  private transient Node trace;
+  private String message;
+  private String json;
+
+  RefAssertionError(Node trace, Supplier<String> renderer) {
+    this.trace = trace;
+    this.renderer = renderer;
+  }
+
+  @Override
+  public synchronized String getMessage() {
+    Supplier<String> r = renderer;
+    if (r != null) {
+      message = r.get();
+      json = new JsonAssertionFormatter().formatAssertion(trace);
+      renderer = null;
+      trace = null;
+    }
+    return message;
+  }
+
+  /**
+   * Writes the evaluated trace as a single-line JSON object in the format of {@link JsonAssertionFormatter}.
+   * The writer is neither flushed nor closed, so the failures can be written one per line to a single file.
+   *
+   * @param writer writer to write to
+   * @throws IOException if the writer throws
+   */
+  public void writeJson(Writer writer) throws IOException {
+    Node node = trace();
+    if (node == null) {
+      writer.write(json);
+    } else {
+      new JsonAssertionFormatter().write(node, writer);
+    }
+  }
+
+  /**
+   * Writes the evaluated trace as a single-line UTF-8 encoded JSON object in the format
+   * of {@link JsonAssertionFormatter}. The stream is flushed but not closed.
+   *
+   * @param output stream to write to
+   * @throws IOException if the stream throws
+   */
+  public void writeJson(OutputStream output) throws IOException {
+    Node node = trace();
+    if (node == null) {
+      output.write(json.getBytes(StandardCharsets.UTF_8));
+      output.flush();
+    } else {
+      new JsonAssertionFormatter().write(node, output);
+    }
+  }
+
+  /**
+   * @return the trace; null if the message is rendered already, so the JSON form is stored
+   */
+  private synchronized Node trace() {
+    return trace;
+  }
+
+  /**
+   * Renders the message, if it was not rendered yet, releasing the evaluated trace
+   *
+   * @return this error
+   */
+  public RefAssertionError detach() {
+    getMessage();
+    return this;
+  }
+
+  @Serial
+  private Object writeReplace() {
+    return detach();
+  }
+}
@@ -1,27 +1,264 @@
 package one.util.asserts;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.code.Op;
 import java.lang.reflect.code.Quoted;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import static one.util.asserts.Node.*;
 
 public final class RefAsserts {
+  /**
+   * Prepares all the assertion conditions declared in the given class (and its nest members) in background,
+   * using the common {@link ForkJoinPool}, so that the first evaluation of every assertion is fast.
+   *
+   * @param testClass class to analyze
+   * @return future which completes when all the assertions are prepared
+   */
+  public static CompletableFuture<Void> warmUp(Class<?> testClass) {
+    return warmUp(testClass, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Prepares all the assertion conditions declared in the given class (and its nest members) in background.
+   * The class files are scanned with a preview API, so without {@code --enable-preview} nothing is prepared,
+   * and the returned future is already completed.
+   *
+   * @param testClass class to analyze
+   * @param executor  executor to run the preparation on
+   * @return future which completes when all the assertions are prepared
+   */
+  public static CompletableFuture<Void> warmUp(Class<?> testClass, Executor executor) {
+    try {
+      return WarmUp.warmUp(testClass, executor);
+    } catch (UnsupportedClassVersionError _) {
+      // WarmUp is compiled against preview features which are not enabled in this VM
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  /**
+   * Asserts that all the elements of the collection match the predicate. Large collections are tested
+   * in parallel. On failure, the number of failing elements is reported, along with the detailed diagnostics
+   * for the first few of them.
+   *
+   * @param collection collection to check
+   * @param predicate  predicate every element should match
+   * @param <T>        type of the elements
+   */
+  public static <T> void assertAllMatch(Collection<T> collection, QuotablePredicate<T> predicate) {
+    assertAllMatch(RefAsserts.<T>elements(collection.toArray()), predicate);
+  }
+
+  /**
+   * Asserts that all the elements of the array match the predicate.
+   *
+   * @param array     array to check
+   * @param predicate predicate every element should match
+   * @param <T>       type of the elements
+   * @see #assertAllMatch(Collection, QuotablePredicate)
+   */
+  public static <T> void assertAllMatch(T[] array, QuotablePredicate<T> predicate) {
+    BulkAssertion.assertAllMatch(array.length, i -> predicate.test(array[i]), i -> array[i], predicate.quoted(),
+            Resolver.forClass(predicate.getClass()));
+  }
+
+  /**
+   * Asserts that all the elements of the stream match the predicate. The stream is consumed entirely,
+   * in parallel if it's parallel; only the failing elements to report are retained.
+   *
+   * @param stream    stream to check
+   * @param predicate predicate every element should match
+   * @param <T>       type of the elements
+   * @see #assertAllMatch(Collection, QuotablePredicate)
+   */
+  public static <T> void assertAllMatch(Stream<T> stream, QuotablePredicate<T> predicate) {
+    BulkAssertion.assertAllMatch(stream, predicate, predicate.quoted(), Resolver.forClass(predicate.getClass()));
+  }
+
+  /**
+   * Asserts that all the elements of the int array match the predicate. Elements are tested without boxing;
+   * only the failing elements are boxed to produce the diagnostics.
+   *
+   * @param array     array to check
+   * @param predicate predicate every element should match
+   * @see #assertAllMatch(Collection, QuotablePredicate)
+   */
+  public static void assertAllMatch(int[] array, QuotableIntPredicate predicate) {
+    BulkAssertion.assertAllMatch(array.length, i -> predicate.test(array[i]), i -> array[i], predicate.quoted(),
+            Resolver.forClass(predicate.getClass()));
+  }
+
+  /**
+   * Asserts that all the elements of the long array match the predicate. Elements are tested without boxing;
+   * only the failing elements are boxed to produce the diagnostics.
+   *
+   * @param array     array to check
+   * @param predicate predicate every element should match
+   * @see #assertAllMatch(Collection, QuotablePredicate)
+   */
+  public static void assertAllMatch(long[] array, QuotableLongPredicate predicate) {
+    BulkAssertion.assertAllMatch(array.length, i -> predicate.test(array[i]), i -> array[i], predicate.quoted(),
+            Resolver.forClass(predicate.getClass()));
+  }
+
+  /**
+   * Asserts that all the elements of the double array match the predicate. Elements are tested without boxing;
+   * only the failing elements are boxed to produce the diagnostics.
+   *
+   * @param array     array to check
+   * @param predicate predicate every element should match
+   * @see #assertAllMatch(Collection, QuotablePredicate)
+   */
+  public static void assertAllMatch(double[] array, QuotableDoublePredicate predicate) {
+    BulkAssertion.assertAllMatch(array.length, i -> predicate.test(array[i]), i -> array[i], predicate.quoted(),
+            Resolver.forClass(predicate.getClass()));
+  }
+
+  /**
+   * Makes the assertions declared in the lookup class and its nest members use the supplied lookup
+   * to access the members their conditions refer to. By default, the assertions access the private members
+   * of their nest, if its package is open to this library (which is always the case on the class path).
+   * Otherwise, they fall back to the direct evaluation, without the diagnostics for such members.
+   * Call this method, like {@code RefAsserts.registerLookup(MethodHandles.lookup())}, in a class from a module
+   * which does not open its package.
+   *
+   * @param lookup lookup with private access to its lookup class
+   * @throws IllegalArgumentException if the lookup has no private access
+   */
+  public static void registerLookup(MethodHandles.Lookup lookup) {
+    Resolver.register(lookup);
+  }
+
+  /**
+   * Enables or disables measuring the evaluation time of every subexpression. When enabled, the failure message
+   * displays the time spent on every subexpression itself, excluding its operands, like
+   * {@code repo.findAll() -> [...] (412 ms)}. Disabled by default, unless the {@code one.util.asserts.timing}
+   * system property is set to {@code true}.
+   *
+   * @param enabled whether to measure the evaluation time
+   */
+  public static void setTiming(boolean enabled) {
+    Interpreter.setTiming(enabled);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T[] elements(Object[] array) {
+    return (T[]) array;
+  }
+
+  private static volatile EvaluationBudget evaluationBudget = EvaluationBudget.DEFAULT;
+
+  /**
+   * Sets the budget for evaluating the subexpressions and formatting the message of every subsequent assertion.
+   *
+   * @param budget budget to use; {@link EvaluationBudget#UNLIMITED} to remove the limits
+   */
+  public static void setEvaluationBudget(EvaluationBudget budget) {
+    evaluationBudget = Objects.requireNonNull(budget);
+  }
+
+  private static volatile FailureRecorder failureRecorder;
+
+  /**
+   * Sets the recorder to store every subsequent assertion failure to.
+   *
+   * @param recorder recorder to use; null to stop recording
+   */
+  public static void setFailureRecorder(FailureRecorder recorder) {
+    failureRecorder = recorder;
+  }
+
   public static void assertTrue(AssertionCondition condition) {
     assertTrue(null, condition);
   }
 
   public static void assertTrue(String message, AssertionCondition condition) {
+    Class<?> conditionClass = condition.getClass();
+    long start = System.nanoTime();
+    AssertionPhaseEvent modelEvent = AssertionPhaseEvent.start(AssertionPhaseEvent.MODEL);
     Quoted quoted = condition.quoted();
-    Node model = Interpreter.buildModel(quoted);
+    modelEvent.end();
+    AssertionMetrics.SiteMetrics metrics = AssertionMetrics.forSite(conditionClass, quoted.op());
+    SiteCache.Site site = SiteCache.site(condition, quoted);
+    ConstantFolder folder = ConstantFolder.forSite(conditionClass, quoted.op());
+    // Interpretation and formatting are limited separately, so the values evaluated within the budget are displayed
+    EvaluationBudget.Tracker budget = evaluationBudget.start();
+    AssertionPhaseEvent interpretationEvent = AssertionPhaseEvent.start(AssertionPhaseEvent.INTERPRETATION);
+    Node model = site != null && site.isUnsupported(quoted)
+            ? new UnsupportedNode(quoted.op(), List.of())
+            : Interpreter.buildModel(quoted, Resolver.forClass(conditionClass), metrics, folder, budget);
+    interpretationEvent.end();
     if (model instanceof UnsupportedNode) {
       // Fallback
-      if (condition.getAsBoolean()) {
+      boolean result = condition.getAsBoolean();
+      metrics.evaluated(System.nanoTime() - start, true, !result);
+      if (Listeners.LISTENER != null) {
+        Listeners.LISTENER.fallbackTaken(condition, result);
+      }
+      modelEvent.report(conditionClass, model, AssertionPhaseEvent.FALLBACK);
+      interpretationEvent.report(conditionClass, model, AssertionPhaseEvent.FALLBACK);
+      if (result) {
         return;
       }
-      throw new AssertionError(message);
+      record(condition, quoted, model);
+      throw new RefAssertionError(model, () -> message);
+    }
+    if (model instanceof NotEvaluatedNode && condition.getAsBoolean()) {
+      // Budget exhausted: the result is known only from the direct evaluation
+      metrics.evaluated(System.nanoTime() - start, true, false);
+      modelEvent.report(conditionClass, model, AssertionPhaseEvent.PASS);
+      interpretationEvent.report(conditionClass, model, AssertionPhaseEvent.PASS);
+      return;
+    }
+    if (model instanceof ValueNode valueNode && Boolean.TRUE.equals(valueNode.value())) {
+      metrics.evaluated(System.nanoTime() - start, false, false);
+      modelEvent.report(conditionClass, model, AssertionPhaseEvent.PASS);
+      interpretationEvent.report(conditionClass, model, AssertionPhaseEvent.PASS);
+      return;
+    }
+    record(condition, quoted, model);
+    metrics.evaluated(System.nanoTime() - start, false, true);
+    AssertionPhaseEvent decompilationEvent = AssertionPhaseEvent.start(AssertionPhaseEvent.DECOMPILATION);
+    Map<Op, String> texts = site == null
+            ? DefaultAssertionFormatter.DEFAULT.decompile(model, folder::text)
+            : site.decompile(quoted.op(), model, DefaultAssertionFormatter.DEFAULT);
+    folder.rememberTexts(texts);
+    decompilationEvent.end();
+    AssertionPhaseEvent snapshotEvent = AssertionPhaseEvent.start(AssertionPhaseEvent.SNAPSHOT);
+    // Mutable containers are copied now, while the values are formatted when the message is requested
+    Node trace = ValueSnapshot.snapshot(model, evaluationBudget.start());
+    snapshotEvent.end();
+    modelEvent.report(conditionClass, model, AssertionPhaseEvent.FAIL);
+    interpretationEvent.report(conditionClass, model, AssertionPhaseEvent.FAIL);
+    decompilationEvent.report(conditionClass, model, AssertionPhaseEvent.FAIL);
+    snapshotEvent.report(conditionClass, model, AssertionPhaseEvent.FAIL);
+    String header = Objects.requireNonNullElse(message, "failed");
+    throw new RefAssertionError(trace, () -> render(conditionClass, metrics, header, trace, texts));
+  }
+
+  private static String render(Class<?> conditionClass, AssertionMetrics.SiteMetrics metrics, String header,
+                               Node trace, Map<Op, String> texts) {
+    long start = System.nanoTime();
+    AssertionPhaseEvent formattingEvent = AssertionPhaseEvent.start(AssertionPhaseEvent.FORMATTING);
+    String text = header + "\n" + DefaultAssertionFormatter.DEFAULT.formatAssertion(trace, texts);
+    formattingEvent.end();
+    metrics.formatted(System.nanoTime() - start);
+    formattingEvent.report(conditionClass, trace, AssertionPhaseEvent.FAIL);
+    return text;
+  }
+
+  private static void record(AssertionCondition condition, Quoted quoted, Node model) {
+    FailureRecorder recorder = failureRecorder;
+    if (recorder != null) {
+      recorder.record(condition, quoted.op(), model);
     }
-    if (model instanceof ValueNode valueNode && Boolean.TRUE.equals(valueNode.value())) return;
-    String formatted = DefaultAssertionFormatter.DEFAULT.formatAssertion(model);
-    throw new AssertionError(Objects.requireNonNullElse(message, "failed") + "\n" + formatted);
   }
 }
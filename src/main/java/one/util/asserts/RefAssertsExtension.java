@@ -0,0 +1,17 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.extension.BeforeAllCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+/**
+ * JUnit 5 extension which prepares all the assertions of the test class before its tests start.
+ * Use it as {@code @ExtendWith(RefAssertsExtension.class)}.
+ *
+ * @see RefAsserts#warmUp(Class)
+ */
+public final class RefAssertsExtension implements BeforeAllCallback {
+  @Override
+  public void beforeAll(ExtensionContext context) {
+    RefAsserts.warmUp(context.getRequiredTestClass()).join();
+  }
+}
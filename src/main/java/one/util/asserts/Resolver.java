@@ -0,0 +1,225 @@
+package one.util.asserts;
+
+import java.lang.invoke.*;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.code.type.FieldRef;
+import java.lang.reflect.code.type.FunctionType;
+import java.lang.reflect.code.type.JavaType;
+import java.lang.reflect.code.type.MethodRef;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Resolves members and types referenced from the code model and caches the results.
+ * The instance is shared between all the threads. Caches are lock-free on the hit path, and no lock is held
+ * while a member is being resolved (a concurrent miss may resolve the same member twice, the first published
+ * result wins), so the callers never block each other and virtual threads are never pinned.
+ * Resolution failures are cached as well, so an inaccessible member is looked up only once.
+ * <p>
+ * Every nest of classes which declares assertions has its own resolver (see {@link #forClass(Class)}),
+ * which has private access to the nest, so the conditions may refer to private members. Unless the nest
+ * registered its own lookup, the resolver refers to the nest host weakly, and derives the private lookup
+ * only to resolve a member which is not cached yet.
+ */
+final class Resolver {
+  static final Resolver DEFAULT = new Resolver(MethodHandles.lookup());
+
+  /**
+   * Resolver holder of the nest of every class, so the nest host is looked up once per class
+   */
+  private static final ClassValue<AtomicReference<Resolver>> BY_CLASS = new ClassValue<>() {
+    @Override
+    protected AtomicReference<Resolver> computeValue(Class<?> cls) {
+      return BY_NEST_HOST.get(cls.getNestHost());
+    }
+  };
+
+  /**
+   * Resolver for every nest host. Created with the private access to the nest host, if its package is open
+   * to this library; may be replaced with the one created from the lookup supplied by the nest itself.
+   */
+  private static final ClassValue<AtomicReference<Resolver>> BY_NEST_HOST = new ClassValue<>() {
+    @Override
+    protected AtomicReference<Resolver> computeValue(Class<?> nestHost) {
+      Resolver resolver;
+      try {
+        // Checks the access only: the lookup is derived again when needed, as it would keep the class reachable
+        MethodHandles.privateLookupIn(nestHost, MethodHandles.lookup());
+        resolver = new Resolver(null, new WeakReference<>(nestHost));
+      } catch (IllegalAccessException | SecurityException _) {
+        // The package is not open to this library: only the accessible members can be resolved
+        resolver = DEFAULT;
+      }
+      return new AtomicReference<>(resolver);
+    }
+  };
+
+  /**
+   * Lookup to resolve the members with; null if it's derived from {@link #nestHost}
+   */
+  private final MethodHandles.Lookup lookup;
+  private final WeakReference<Class<?>> nestHost;
+  private final ConcurrentHashMap<MethodRef, MethodHandle> methods = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<FieldRef, VarHandle> fields = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<JavaType, Class<?>> types = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<MethodReference, Object> methodReferences = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Object, ReflectiveOperationException> failures = new ConcurrentHashMap<>();
+
+  private static final ClassValue<Method> SAM = new ClassValue<>() {
+    @Override
+    protected Method computeValue(Class<?> type) {
+      return Stream.of(type.getMethods()).filter(m -> Modifier.isAbstract(m.getModifiers()))
+              .findFirst().orElse(null);
+    }
+  };
+
+  /**
+   * Non-capturing method reference
+   *
+   * @param target              referenced method
+   * @param functionalInterface functional interface type
+   * @param invokableType       type of the functional interface method as seen at the use site
+   */
+  record MethodReference(MethodRef target, JavaType functionalInterface, FunctionType invokableType) {}
+
+  Resolver(MethodHandles.Lookup lookup) {
+    this(lookup, null);
+  }
+
+  private Resolver(MethodHandles.Lookup lookup, WeakReference<Class<?>> nestHost) {
+    this.lookup = lookup;
+    this.nestHost = nestHost;
+  }
+
+  /**
+   * @param cls class which declares the assertion (e.g., the class of the condition lambda)
+   * @return resolver which has private access to the nest of the class, if possible
+   */
+  static Resolver forClass(Class<?> cls) {
+    return BY_CLASS.get(cls).get();
+  }
+
+  /**
+   * Makes the nest of the lookup class use the supplied lookup to resolve the members.
+   * The lookup is retained while the nest is loaded.
+   *
+   * @param lookup lookup with private access
+   * @throws IllegalArgumentException if the lookup has no private access
+   */
+  static void register(MethodHandles.Lookup lookup) {
+    if ((lookup.lookupModes() & MethodHandles.Lookup.PRIVATE) == 0) {
+      throw new IllegalArgumentException("Lookup has no private access: " + lookup);
+    }
+    BY_NEST_HOST.get(lookup.lookupClass().getNestHost()).set(new Resolver(lookup));
+  }
+
+  MethodHandles.Lookup lookup() {
+    if (lookup != null) return lookup;
+    Class<?> host = nestHost.get();
+    if (host != null) {
+      try {
+        return MethodHandles.privateLookupIn(host, MethodHandles.lookup());
+      } catch (IllegalAccessException _) {
+        // Checked when the resolver was created
+      }
+    }
+    return DEFAULT.lookup;
+  }
+
+  MethodHandle method(MethodRef ref, AssertionMetrics.SiteMetrics metrics) throws ReflectiveOperationException {
+    MethodHandle handle = methods.get(ref);
+    if (hit(handle, metrics)) return handle;
+    checkFailed(ref);
+    try {
+      handle = ref.resolveToHandle(lookup());
+    } catch (ReflectiveOperationException e) {
+      throw failed(ref, e);
+    }
+    MethodHandle prev = methods.putIfAbsent(ref, handle);
+    return prev == null ? handle : prev;
+  }
+
+  VarHandle field(FieldRef ref, AssertionMetrics.SiteMetrics metrics) throws ReflectiveOperationException {
+    VarHandle handle = fields.get(ref);
+    if (hit(handle, metrics)) return handle;
+    checkFailed(ref);
+    try {
+      handle = ref.resolveToHandle(lookup());
+    } catch (ReflectiveOperationException e) {
+      throw failed(ref, e);
+    }
+    VarHandle prev = fields.putIfAbsent(ref, handle);
+    return prev == null ? handle : prev;
+  }
+
+  Class<?> type(JavaType type, AssertionMetrics.SiteMetrics metrics) throws ReflectiveOperationException {
+    Class<?> cls = types.get(type);
+    if (hit(cls, metrics)) return cls;
+    checkFailed(type);
+    try {
+      cls = type.toNominalDescriptor().resolveConstantDesc(lookup());
+    } catch (ReflectiveOperationException e) {
+      throw failed(type, e);
+    }
+    Class<?> prev = types.putIfAbsent(type, cls);
+    return prev == null ? cls : prev;
+  }
+
+  private void checkFailed(Object ref) throws ReflectiveOperationException {
+    ReflectiveOperationException failure = failures.get(ref);
+    if (failure != null) throw failure;
+  }
+
+  private ReflectiveOperationException failed(Object ref, ReflectiveOperationException e) {
+    ReflectiveOperationException prev = failures.putIfAbsent(ref, e);
+    return prev == null ? e : prev;
+  }
+
+  /**
+   * Returns an instance of the functional interface which implements the method reference.
+   * As the method reference captures nothing, the instance is spun once and shared by all the evaluations.
+   *
+   * @param ref     method reference
+   * @param metrics site metrics to report cache hit or miss to; null if not necessary
+   * @return functional interface instance
+   */
+  Object methodReference(MethodReference ref, AssertionMetrics.SiteMetrics metrics) throws Throwable {
+    Object instance = methodReferences.get(ref);
+    if (hit(instance, metrics)) return instance;
+    MethodHandle handle = method(ref.target(), null);
+    Class<?> aClass = type(ref.functionalInterface(), null);
+    Method sam = SAM.get(aClass);
+    if (sam == null) {
+      throw new ReflectiveOperationException("No SAM found in " + aClass);
+    }
+    MethodType samMethodType = MethodType.methodType(sam.getReturnType(), sam.getParameterTypes());
+    FunctionType invokableType = ref.invokableType();
+    Class<?> rType = type((JavaType) invokableType.returnType(), null);
+    Class<?>[] pTypes = new Class<?>[invokableType.parameterTypes().size()];
+    for (int i = 0; i < pTypes.length; i++) {
+      pTypes[i] = type((JavaType) invokableType.parameterTypes().get(i), null);
+    }
+    // Spinning the lambda requires full privilege access, which the private lookup in another module lacks
+    MethodHandles.Lookup lookup = lookup();
+    MethodHandles.Lookup caller = lookup.hasFullPrivilegeAccess() ? lookup : DEFAULT.lookup;
+    CallSite callSite = LambdaMetafactory.metafactory(caller, sam.getName(),
+            MethodType.methodType(aClass), samMethodType, handle, MethodType.methodType(rType, pTypes));
+    instance = callSite.getTarget().invoke();
+    Object prev = methodReferences.putIfAbsent(ref, instance);
+    return prev == null ? instance : prev;
+  }
+
+  private static boolean hit(Object cached, AssertionMetrics.SiteMetrics metrics) {
+    if (metrics != null) {
+      if (cached != null) {
+        metrics.cacheHit();
+      } else {
+        metrics.cacheMiss();
+      }
+    }
+    return cached != null;
+  }
+}
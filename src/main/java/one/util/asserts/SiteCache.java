@@ -0,0 +1,393 @@
+package one.util.asserts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.code.Body;
+import java.lang.reflect.code.Location;
+import java.lang.reflect.code.Op;
+import java.lang.reflect.code.Quoted;
+import java.lang.reflect.code.Value;
+import java.lang.reflect.code.op.CoreOp;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Optional file-backed cache of the analyzed assertion sites, shared between JVM runs
+ * (e.g., between the forks of the test runner). Enabled by setting the {@value #PROPERTY} system property
+ * to the cache file path.
+ * <p>
+ * For every site it stores whether the condition has a shape supported by the interpreter
+ * (see {@link Interpreter#isSupported(Quoted)}), and the decompiled text of ops. Failures which depend
+ * on the run (e.g., an inaccessible member) are never cached. A site is keyed by its nest host class and
+ * the source location of the lambda. Every site records the hash of the class files of its nest, so entries
+ * become stale as soon as the class is recompiled. The file is read once, on first use; the updated entries
+ * are merged into the file at JVM shutdown.
+ * <p>
+ * The file can be populated during the build, after the classes are compiled, by running {@link #main(String[])}:
+ * all the assertion sites found in the class files are analyzed without being evaluated.
+ */
+final class SiteCache {
+  static final String PROPERTY = "one.util.asserts.cacheFile";
+
+  private static final int MAGIC = 0x52454643;
+  // Version 1 cached the run-specific interpretation failures as well
+  private static final int VERSION = 2;
+  private static final int MAX_TEXT_LENGTH = 16384;
+
+  private static final SiteCache INSTANCE = fromProperty(System.getProperty(PROPERTY));
+
+  private static final ClassValue<Long> NEST_HASH = new ClassValue<>() {
+    @Override
+    protected Long computeValue(Class<?> nestHost) {
+      return nestHash(nestHost);
+    }
+  };
+
+  private final Path file;
+  private final Map<String, Site> sites;
+  private final ClassValue<AtomicReference<Optional<Site>>> byLambdaClass = new ClassValue<>() {
+    @Override
+    protected AtomicReference<Optional<Site>> computeValue(Class<?> type) {
+      return new AtomicReference<>();
+    }
+  };
+
+  private SiteCache(Path file, Map<String, Site> sites) {
+    this.file = file;
+    this.sites = sites;
+  }
+
+  /**
+   * Cached information about a single assertion site
+   */
+  static final class Site {
+    private final long hash;
+    private volatile Boolean supported;
+    private final Map<Integer, String> texts;
+    private volatile boolean dirty;
+
+    private Site(long hash, Boolean supported, Map<Integer, String> texts, boolean dirty) {
+      this.hash = hash;
+      this.supported = supported;
+      this.texts = texts;
+      this.dirty = dirty;
+    }
+
+    /**
+     * @param quoted quoted condition of this site
+     * @return true if the shape of the condition cannot be interpreted; checked once per site
+     */
+    boolean isUnsupported(Quoted quoted) {
+      Boolean s = supported;
+      if (s == null) {
+        s = Interpreter.isSupported(quoted);
+        supported = s;
+        dirty = true;
+      }
+      return !s;
+    }
+
+    /**
+     * Analyzes the condition ahead of time: checks its shape and decompiles every op it may display
+     *
+     * @param quoted quoted condition of this site
+     */
+    void prepare(Quoted quoted) {
+      if (isUnsupported(quoted) || !(quoted.op() instanceof CoreOp.LambdaOp lambdaOp)) return;
+      Map<Op, Integer> index = indexOps(lambdaOp);
+      for (Op op : lambdaOp.body().entryBlock().children()) {
+        if (op instanceof CoreOp.ReturnOp ret && ret.operands().getFirst() instanceof Op.Result result) {
+          prepare(result.op(), index);
+        }
+      }
+    }
+
+    private void prepare(Op op, Map<Op, Integer> index) {
+      Integer i = index.get(op);
+      // Yield passes the value of its operand, so it's never displayed itself
+      if (i != null && !(op instanceof CoreOp.YieldOp) && !texts.containsKey(i)) {
+        try {
+          String text = Decompiler.DEFAULT.opText(op);
+          if (text.length() <= MAX_TEXT_LENGTH) {
+            texts.put(i, text);
+            dirty = true;
+          }
+        } catch (RuntimeException _) {
+          // Decompiled on the first failure instead
+        }
+      }
+      // Same ops as evaluated by the interpreter: variables are read from the captured values, quoted bodies
+      // are not evaluated
+      if (op instanceof CoreOp.VarAccessOp) return;
+      for (Value operand : op.operands()) {
+        if (operand instanceof Op.Result result) {
+          prepare(result.op(), index);
+        }
+      }
+      if (!(op instanceof CoreOp.QuotedOp)) {
+        for (Body body : op.children()) {
+          prepare(body.entryBlock().terminatingOp(), index);
+        }
+      }
+    }
+
+    /**
+     * Decompiles the ops of the model, reusing the texts cached for the site
+     *
+     * @param root      root op of the quoted lambda
+     * @param model     model to decompile
+     * @param formatter formatter
+     * @return op texts
+     */
+    Map<Op, String> decompile(Op root, Node model, DefaultAssertionFormatter formatter) {
+      Map<Op, Integer> index = indexOps(root);
+      Map<Op, String> result = formatter.decompile(model, op -> {
+        Integer i = index.get(op);
+        return i == null ? null : texts.get(i);
+      });
+      result.forEach((op, text) -> {
+        Integer i = index.get(op);
+        if (i != null && text.length() <= MAX_TEXT_LENGTH && texts.putIfAbsent(i, text) == null) {
+          dirty = true;
+        }
+      });
+      return result;
+    }
+  }
+
+  /**
+   * @param condition condition
+   * @param quoted    quoted condition
+   * @return cached site information; null if cache is disabled, or the site cannot be cached
+   */
+  static Site site(AssertionCondition condition, Quoted quoted) {
+    SiteCache cache = INSTANCE;
+    return cache == null ? null : cache.site(condition.getClass(), quoted);
+  }
+
+  /**
+   * @param lambdaClass class of the condition lambda
+   * @param quoted      quoted condition
+   * @return cached site information; null if the site cannot be cached
+   */
+  Site site(Class<?> lambdaClass, Quoted quoted) {
+    AtomicReference<Optional<Site>> ref = byLambdaClass.get(lambdaClass);
+    Optional<Site> site = ref.get();
+    if (site == null) {
+      site = Optional.ofNullable(lookup(lambdaClass, quoted));
+      if (!ref.compareAndSet(null, site)) {
+        site = ref.get();
+      }
+    }
+    return site.orElse(null);
+  }
+
+  /**
+   * Populates the cache file ahead of time with all the assertion conditions declared in the compiled classes,
+   * e.g., during the build, before the tests are run. Requires {@code --enable-preview}, and the classes
+   * with their dependencies on the class path. The conditions are not evaluated.
+   *
+   * @param args cache file, followed by the directories of the compiled classes
+   * @throws IOException if a class directory cannot be read
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: java --enable-preview " + SiteCache.class.getName() + " <cache file> <classes dir>...");
+      System.exit(1);
+    }
+    SiteCache cache = open(Path.of(args[0]));
+    ClassLoader loader = ClassLoader.getSystemClassLoader();
+    int count = 0;
+    for (int i = 1; i < args.length; i++) {
+      Path dir = Path.of(args[i]);
+      List<String> classNames;
+      try (Stream<Path> files = Files.walk(dir)) {
+        classNames = files.map(file -> dir.relativize(file).toString())
+                .filter(name -> name.endsWith(".class") && !name.endsWith("module-info.class"))
+                .map(name -> name.substring(0, name.length() - ".class".length()).replace(File.separatorChar, '.'))
+                .toList();
+      }
+      for (String className : classNames) {
+        Class<?> cls;
+        try {
+          cls = Class.forName(className, false, loader);
+        } catch (ClassNotFoundException | LinkageError _) {
+          continue;
+        }
+        for (AssertionCondition condition : WarmUp.instantiateConditions(cls)) {
+          try {
+            Quoted quoted = condition.quoted();
+            Site site = cache.site(condition.getClass(), quoted);
+            if (site != null) {
+              site.prepare(quoted);
+              count++;
+            }
+          } catch (RuntimeException _) {
+            // Analyzed on the first evaluation instead
+          }
+        }
+      }
+    }
+    cache.save();
+    System.out.println("Prepared " + count + " assertion sites in " + args[0]);
+  }
+
+  private Site lookup(Class<?> lambdaClass, Quoted quoted) {
+    Location location = quoted.op().location();
+    if (location == null) return null;
+    Class<?> nestHost = lambdaClass.getNestHost();
+    long hash = NEST_HASH.get(nestHost);
+    if (hash == 0) return null;
+    String key = nestHost.getName() + ":" + location.line() + ":" + location.column();
+    Site site = sites.get(key);
+    if (site != null && site.hash == hash) return site;
+    Site fresh = new Site(hash, null, new ConcurrentHashMap<>(), true);
+    return sites.merge(key, fresh, (old, _) -> old.hash == hash ? old : fresh);
+  }
+
+  private static Map<Op, Integer> indexOps(Op root) {
+    Map<Op, Integer> index = new IdentityHashMap<>();
+    root.traverse(index, (map, element) -> {
+      if (element instanceof Op op) {
+        map.put(op, map.size());
+      }
+      return map;
+    });
+    return index;
+  }
+
+  private static long nestHash(Class<?> nestHost) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      Class<?>[] members = nestHost.getNestMembers();
+      Arrays.sort(members, Comparator.comparing(Class::getName));
+      for (Class<?> member : members) {
+        try (InputStream is = member.getResourceAsStream("/" + member.getName().replace('.', '/') + ".class")) {
+          if (is == null) return 0;
+          digest.update(is.readAllBytes());
+        }
+      }
+      return ByteBuffer.wrap(digest.digest()).getLong();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      return 0;
+    }
+  }
+
+  private static SiteCache fromProperty(String fileName) {
+    if (fileName == null || fileName.isEmpty()) return null;
+    SiteCache cache = open(Path.of(fileName));
+    Runtime.getRuntime().addShutdownHook(new Thread(cache::save, "RefAsserts site cache writer"));
+    return cache;
+  }
+
+  /**
+   * @param file cache file; missing or corrupted file is treated as empty
+   * @return cache backed by the file; updated entries are written by {@link #save()} only
+   */
+  static SiteCache open(Path file) {
+    return new SiteCache(file, new ConcurrentHashMap<>(read(file)));
+  }
+
+  /**
+   * Merges the updated entries into the cache file
+   */
+  void save() {
+    Map<String, Site> updated = new HashMap<>();
+    sites.forEach((key, site) -> {
+      if (site.dirty) updated.put(key, site);
+    });
+    if (updated.isEmpty()) return;
+    Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+         FileLock _ = lockChannel.lock()) {
+      // Other JVMs could have updated the file since we read it
+      Map<String, Site> merged = new TreeMap<>(read(file));
+      merged.putAll(updated);
+      Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.write(tmp, write(merged));
+      try {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException _) {
+        // A concurrently starting JVM may miss the file for a moment and start with an empty cache
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } catch (IOException | RuntimeException e) {
+      // Cache is optional: failure to write it should not affect the run, but should not go unnoticed either
+      System.getLogger(SiteCache.class.getName())
+              .log(System.Logger.Level.WARNING, "Unable to update the assertion site cache " + file, e);
+    }
+  }
+
+  private static Map<String, Site> read(Path file) {
+    if (!Files.isRegularFile(file)) return Map.of();
+    try {
+      // Read into the heap rather than mapped: a mapped file could not be replaced on some platforms
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return Map.of();
+      int count = buffer.getInt();
+      Map<String, Site> sites = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        String key = readString(buffer);
+        long hash = buffer.getLong();
+        byte supported = buffer.get();
+        int textCount = buffer.getInt();
+        Map<Integer, String> texts = new ConcurrentHashMap<>();
+        for (int j = 0; j < textCount; j++) {
+          int index = buffer.getInt();
+          texts.put(index, readString(buffer));
+        }
+        sites.put(key, new Site(hash, supported == 0 ? null : supported == 1, texts, false));
+      }
+      return sites;
+    } catch (IOException | RuntimeException _) {
+      // Corrupted or truncated file: start from scratch
+      return Map.of();
+    }
+  }
+
+  private static byte[] write(Map<String, Site> sites) {
+    List<byte[]> chunks = new ArrayList<>();
+    int size = 12;
+    for (Map.Entry<String, Site> entry : sites.entrySet()) {
+      Site site = entry.getValue();
+      Map<Integer, String> texts = new TreeMap<>(site.texts);
+      byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+      List<byte[]> textBytes = texts.values().stream().map(t -> t.getBytes(StandardCharsets.UTF_8)).toList();
+      int siteSize = 4 + key.length + 8 + 1 + 4 + textBytes.stream().mapToInt(b -> 8 + b.length).sum();
+      ByteBuffer buffer = ByteBuffer.allocate(siteSize);
+      buffer.putInt(key.length).put(key).putLong(site.hash)
+              .put((byte) (site.supported == null ? 0 : site.supported ? 1 : 2)).putInt(texts.size());
+      Iterator<byte[]> textIterator = textBytes.iterator();
+      for (Integer index : texts.keySet()) {
+        byte[] text = textIterator.next();
+        buffer.putInt(index).putInt(text.length).put(text);
+      }
+      chunks.add(buffer.array());
+      size += siteSize;
+    }
+    ByteBuffer result = ByteBuffer.allocate(size).putInt(MAGIC).putInt(VERSION).putInt(sites.size());
+    chunks.forEach(result::put);
+    return result.array();
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    String str = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+    buffer.position(buffer.position() + length);
+    return str;
+  }
+}
@@ -6,6 +6,7 @@ import java.lang.reflect.code.Op;
 import java.lang.reflect.code.op.CoreOp;
 import java.lang.reflect.code.type.ArrayType;
 import java.lang.reflect.code.type.JavaType;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,4 +29,15 @@ final class Util {
   static CoreOp.InvokeOp extractMethodReference(CoreOp.QuotedOp quoted) {
     return Optional.ofNullable(extractLambda(quoted)).flatMap(CoreOp.LambdaOp::methodReference).orElse(null);
   }
+
+  /**
+   * @param cls class
+   * @return list containing the class itself followed by interfaces it directly implements
+   */
+  static List<Class<?>> withInterfaces(Class<?> cls) {
+    List<Class<?>> result = new ArrayList<>();
+    result.add(cls);
+    result.addAll(List.of(cls.getInterfaces()));
+    return result;
+  }
 }
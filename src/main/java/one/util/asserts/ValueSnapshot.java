@@ -0,0 +1,159 @@
+package one.util.asserts;
+
+import java.lang.reflect.Array;
+import java.util.*;
+
+import static one.util.asserts.Node.*;
+
+/**
+ * Bounded snapshots of the evaluated values for {@link CapturePolicy#SNAPSHOT}. Arrays, collections and maps
+ * are shallowly copied (at most {@value #MAX_ELEMENTS} elements), mutable char sequences are copied (at most
+ * {@value #MAX_STRING_LENGTH} chars), and the values are formatted later, when the failure is rendered.
+ * Other objects are kept as is, so they are displayed in the state they have at that time.
+ * Only the diffs of failed equality checks are rendered at snapshot time, as the copies are incomplete.
+ */
+final class ValueSnapshot {
+  private static final int MAX_STRING_LENGTH = 100;
+  /**
+   * Enough to display up to the formatter length limit, as every element takes at least one char and a separator
+   */
+  private static final int MAX_ELEMENTS = 100;
+
+  /**
+   * Value which was not copied, as the {@link EvaluationBudget} was exhausted
+   */
+  static final Rendered NOT_FORMATTED = new Rendered("not formatted");
+
+  /**
+   * Pre-rendered value
+   *
+   * @param text rendered value
+   */
+  record Rendered(String text) {
+  }
+
+  /**
+   * Bounded copy of a mutable value
+   *
+   * @param value    copy of the same kind as the original (array, list, set, map or string), truncated
+   * @param typeName name of the original value class
+   * @param size     number of elements (or chars) in the original value
+   */
+  record Copy(Object value, String typeName, int size) {
+  }
+
+  /**
+   * Result of the failed equality check, displayed as {@code false}
+   *
+   * @param diff difference of the operands, as described by {@link Differ} when the snapshot was taken,
+   *             one indented line per diff line; empty if the difference cannot be described
+   */
+  record Mismatch(Rendered diff) {
+  }
+
+  /**
+   * @param node evaluated tree
+   * @return tree which contains no references to the mutable containers
+   */
+  static Node snapshot(Node node) {
+    return snapshot(node, null);
+  }
+
+  /**
+   * @param node   evaluated tree
+   * @param budget budget tracker; once it's exhausted, values are replaced with {@link #NOT_FORMATTED}.
+   *               Null if unlimited.
+   * @return tree which contains no references to the mutable containers
+   */
+  static Node snapshot(Node node, EvaluationBudget.Tracker budget) {
+    return snapshot(node, budget, new IdentityHashMap<>());
+  }
+
+  private static Node snapshot(Node node, EvaluationBudget.Tracker budget, Map<Object, Object> copies) {
+    var children = node.children().stream().map(c -> snapshot(c, budget, copies)).toList();
+    return switch (node) {
+      case ValueNode valueNode when valueNode.isTrivial() ->
+              new ValueNode(node.op(), snapshotValue(valueNode.value(), copies), children, valueNode.nanos());
+      case ValueNode valueNode when budget != null && budget.exhausted() ->
+              new ValueNode(node.op(), NOT_FORMATTED, children, valueNode.nanos());
+      case ValueNode valueNode when Differ.isFailedEquality(valueNode) ->
+              new ValueNode(node.op(), mismatch(valueNode), children, valueNode.nanos());
+      case ValueNode valueNode ->
+              new ValueNode(node.op(), snapshotValue(valueNode.value(), copies), children, valueNode.nanos());
+      case ExceptionNode exceptionNode ->
+              new ExceptionNode(node.op(), exceptionNode.throwable(), children, exceptionNode.nanos());
+      case UnsupportedNode _ -> new UnsupportedNode(node.op(), children);
+      case NotEvaluatedNode _ -> new NotEvaluatedNode(node.op(), children);
+    };
+  }
+
+  /**
+   * @param value value to check
+   * @return true if the value is immutable and its rendered form is short, so it's kept as is
+   */
+  static boolean isCompact(Object value) {
+    return switch (value) {
+      case null -> true;
+      case Integer _, Long _, Short _, Byte _, Character _, Boolean _, Float _, Double _, Enum<?> _ -> true;
+      case String s -> s.length() <= MAX_STRING_LENGTH;
+      default -> false;
+    };
+  }
+
+  /**
+   * Describes the difference of the complete operands, so elements beyond the copied ones are reported too
+   */
+  private static Mismatch mismatch(ValueNode node) {
+    StringBuilder sb = new StringBuilder();
+    if (node.children().getFirst() instanceof ValueNode left && node.children().getLast() instanceof ValueNode right) {
+      Differ.DEFAULT.diff(left.value(), right.value()).forEach(line -> sb.append("  ").append(line).append("\n"));
+    }
+    return new Mismatch(new Rendered(sb.toString()));
+  }
+
+  private static Object snapshotValue(Object value, Map<Object, Object> copies) {
+    // Strings are immutable, and kept entirely, so the diff displays the actual difference
+    if (isCompact(value) || value instanceof String) return value;
+    // The same object loaded several times is copied once and keeps sharing the identity
+    return copies.computeIfAbsent(value, v -> {
+      Object copy = copy(v);
+      return copy == v ? v : new Copy(copy, v.getClass().getName(), size(v));
+    });
+  }
+
+  private static Object copy(Object value) {
+    return switch (value) {
+      case Object[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case int[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case long[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case double[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case float[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case short[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case byte[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case char[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case boolean[] arr -> Arrays.copyOf(arr, Math.min(arr.length, MAX_ELEMENTS));
+      case Set<?> set -> set.stream().limit(MAX_ELEMENTS).collect(LinkedHashSet::new, Set::add, Set::addAll);
+      case Collection<?> c -> c.stream().limit(MAX_ELEMENTS).toList();
+      case Map<?, ?> map -> {
+        Map<Object, Object> copy = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+          if (copy.size() == MAX_ELEMENTS) break;
+          copy.put(entry.getKey(), entry.getValue());
+        }
+        yield copy;
+      }
+      case StringBuilder sb -> sb.substring(0, Math.min(sb.length(), MAX_STRING_LENGTH + 1));
+      case StringBuffer sb -> sb.substring(0, Math.min(sb.length(), MAX_STRING_LENGTH + 1));
+      default -> value;
+    };
+  }
+
+  private static int size(Object value) {
+    return switch (value) {
+      case Collection<?> c -> c.size();
+      case Map<?, ?> map -> map.size();
+      case CharSequence cs -> cs.length();
+      default -> Array.getLength(value);
+    };
+  }
+}
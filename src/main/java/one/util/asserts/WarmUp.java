@@ -0,0 +1,153 @@
+package one.util.asserts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.classfile.*;
+import java.lang.classfile.instruction.FieldInstruction;
+import java.lang.classfile.instruction.InvokeDynamicInstruction;
+import java.lang.classfile.instruction.InvokeInstruction;
+import java.lang.classfile.instruction.TypeCheckInstruction;
+import java.lang.constant.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.code.TypeElement;
+import java.lang.reflect.code.type.FieldRef;
+import java.lang.reflect.code.type.FunctionType;
+import java.lang.reflect.code.type.JavaType;
+import java.lang.reflect.code.type.MethodRef;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Pre-analyzes the {@link AssertionCondition} lambdas declared in a class, so the first evaluation
+ * of every assertion site finds the members it refers to already resolved by the {@link Resolver} of the class.
+ * <p>
+ * The lambdas are found by scanning the class files: every {@code invokedynamic} linked by
+ * {@link java.lang.invoke.LambdaMetafactory} which produces an {@link AssertionCondition} points to the synthetic
+ * method which implements the lambda body. All the methods, fields and types referenced from this method
+ * are resolved ahead of time.
+ * <p>
+ * The same scan is used to populate the {@link SiteCache} during the build (see {@link SiteCache#main(String[])}).
+ */
+final class WarmUp {
+  private static final ClassDesc CD_ASSERTION_CONDITION = ClassDesc.of(AssertionCondition.class.getName());
+  private static final ClassDesc CD_LAMBDA_METAFACTORY = ClassDesc.of("java.lang.invoke.LambdaMetafactory");
+
+  private WarmUp() {
+  }
+
+  static CompletableFuture<Void> warmUp(Class<?> cls, Executor executor) {
+    return CompletableFuture.allOf(Stream.of(cls.getNestMembers())
+            .map(member -> CompletableFuture.supplyAsync(() -> findConditions(member), executor)
+                    .thenCompose(bodies -> CompletableFuture.allOf(bodies.stream()
+                            .map(body -> CompletableFuture.runAsync(
+                                    () -> prepare(body, Resolver.forClass(member)), executor))
+                            .toArray(CompletableFuture[]::new))))
+            .toArray(CompletableFuture[]::new));
+  }
+
+  private static List<CodeModel> findConditions(Class<?> cls) {
+    ClassModel classModel = parse(cls);
+    if (classModel == null) return List.of();
+    List<DirectMethodHandleDesc> implementations = conditionSites(classModel).stream()
+            .map(indy -> (DirectMethodHandleDesc) indy.bootstrapArgs().get(1)).toList();
+    List<CodeModel> bodies = new ArrayList<>();
+    for (MethodModel method : classModel.methods()) {
+      for (DirectMethodHandleDesc impl : implementations) {
+        if (method.methodName().equalsString(impl.methodName()) &&
+                method.methodTypeSymbol().descriptorString().equals(impl.lookupDescriptor())) {
+          method.code().ifPresent(bodies::add);
+        }
+      }
+    }
+    return bodies;
+  }
+
+  /**
+   * Creates an instance of every {@link AssertionCondition} lambda declared in the class by linking its call site,
+   * without running the code which declares it. The captured values are zeros and nulls, so the instances
+   * must not be evaluated: only their code models are usable.
+   *
+   * @param cls class to scan
+   * @return condition instances; the call sites which cannot be linked are skipped
+   */
+  static List<AssertionCondition> instantiateConditions(Class<?> cls) {
+    ClassModel classModel = parse(cls);
+    if (classModel == null) return List.of();
+    MethodHandles.Lookup lookup;
+    try {
+      lookup = MethodHandles.privateLookupIn(cls, MethodHandles.lookup());
+    } catch (IllegalAccessException _) {
+      return List.of();
+    }
+    List<AssertionCondition> conditions = new ArrayList<>();
+    for (InvokeDynamicInstruction indy : conditionSites(classModel)) {
+      try {
+        MethodHandle factory = indy.invokedynamic().asSymbol().resolveCallSiteDesc(lookup).getTarget();
+        Object[] captured = factory.type().parameterList().stream()
+                .map(type -> type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null).toArray();
+        conditions.add((AssertionCondition) factory.invokeWithArguments(captured));
+      } catch (Throwable _) {
+        // Cannot be linked ahead of time: the site is analyzed on its first evaluation
+      }
+    }
+    return conditions;
+  }
+
+  private static ClassModel parse(Class<?> cls) {
+    try (InputStream is = cls.getResourceAsStream("/" + cls.getName().replace('.', '/') + ".class")) {
+      return is == null ? null : ClassFile.of().parse(is.readAllBytes());
+    } catch (IOException | IllegalArgumentException _) {
+      return null;
+    }
+  }
+
+  /**
+   * @return {@code invokedynamic} instructions which create the {@link AssertionCondition} lambdas
+   * implemented in the class itself
+   */
+  private static List<InvokeDynamicInstruction> conditionSites(ClassModel classModel) {
+    List<InvokeDynamicInstruction> sites = new ArrayList<>();
+    for (MethodModel method : classModel.methods()) {
+      method.code().ifPresent(code -> code.forEach(element -> {
+        if (element instanceof InvokeDynamicInstruction indy &&
+                indy.typeSymbol().returnType().equals(CD_ASSERTION_CONDITION) &&
+                indy.bootstrapMethod().owner().equals(CD_LAMBDA_METAFACTORY) &&
+                indy.bootstrapArgs().size() > 1 &&
+                indy.bootstrapArgs().get(1) instanceof DirectMethodHandleDesc impl &&
+                impl.owner().equals(classModel.thisClass().asSymbol())) {
+          sites.add(indy);
+        }
+      }));
+    }
+    return sites;
+  }
+
+  private static void prepare(CodeModel body, Resolver resolver) {
+    for (CodeElement element : body) {
+      try {
+        switch (element) {
+          case InvokeInstruction inv when !inv.name().equalsString(ConstantDescs.INIT_NAME) ->
+                  resolver.method(MethodRef.method(JavaType.type(inv.owner().asSymbol()),
+                          inv.name().stringValue(), functionType(inv.typeSymbol())), null);
+          case FieldInstruction field -> resolver.field(FieldRef.field(JavaType.type(field.owner().asSymbol()),
+                  field.name().stringValue(), JavaType.type(field.typeSymbol())), null);
+          case TypeCheckInstruction check -> resolver.type(JavaType.type(check.type().asSymbol()), null);
+          default -> {
+          }
+        }
+      } catch (ReflectiveOperationException | RuntimeException _) {
+        // Inaccessible or missing member: the interpreter will report it during the evaluation
+      }
+    }
+  }
+
+  private static FunctionType functionType(MethodTypeDesc desc) {
+    return FunctionType.functionType(JavaType.type(desc.returnType()),
+            desc.parameterList().stream().map(JavaType::type).toArray(TypeElement[]::new));
+  }
+}
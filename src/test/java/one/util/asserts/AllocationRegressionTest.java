@@ -0,0 +1,129 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static one.util.asserts.RefAsserts.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that the bytes allocated per assertion, after warm-up and with no {@link EvaluationListener} installed,
+ * do not exceed the baselines from {@code allocation-baselines.properties} by more than the tolerance.
+ * The tolerance is smaller than any object, so a single extra allocation per assertion fails the test.
+ * If the {@value #BASELINES_PROPERTY} system property is set, the measured values are written to that file
+ * as the new baselines instead. A scenario without a baseline is skipped.
+ */
+public final class AllocationRegressionTest {
+  private static final int WARM_UP = 20_000;
+  private static final int ITERATIONS = 5_000;
+  private static final int ROUNDS = 5;
+  private static final String BASELINES_PROPERTY = "allocation.baselines";
+
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN =
+          ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean &&
+                  bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled() ? bean : null;
+
+  @Test
+  public void testPassing(TestReporter reporter) {
+    int x = 1;
+    measure(reporter, "passing", () -> assertTrue(() -> x > 0));
+  }
+
+  @Test
+  public void testArithmetic(TestReporter reporter) {
+    int a = 3;
+    int b = 4;
+    long c = 5;
+    measure(reporter, "arithmetic", () -> assertTrue(() -> a * a + b * b == c * c));
+  }
+
+  @Test
+  public void testMethodCall(TestReporter reporter) {
+    String str = "hello";
+    List<Integer> list = List.of(1, 2, 3);
+    measure(reporter, "methodCall", () -> assertTrue(() -> str.length() == 5 && list.contains(2)));
+  }
+
+  @Test
+  public void testFailing(TestReporter reporter) {
+    int x = 2;
+    measure(reporter, "failing", () -> {
+      AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(() -> x + x == 5));
+      assertNotNull(error.getMessage());
+    });
+  }
+
+  private static void measure(TestReporter reporter, String scenario, Runnable assertion) {
+    assumeTrue(THREAD_BEAN != null, "Thread allocation measurement is not supported");
+    assertNull(Listeners.LISTENER, "Allocation must be measured without listeners");
+    String baselinesFile = System.getProperty(BASELINES_PROPERTY);
+    Properties baselines = baselines();
+    String baseline = baselines.getProperty(scenario);
+    assumeTrue(baselinesFile != null || baseline != null, () -> scenario + ": no baseline is recorded; run with -D" +
+            BASELINES_PROPERTY + "=src/test/resources/allocation-baselines.properties to record it");
+    for (int i = 0; i < WARM_UP; i++) {
+      assertion.run();
+    }
+    long threadId = Thread.currentThread().threadId();
+    // The least allocating round is taken, as GC or JIT activity could add to a single round
+    long bytesPerCall = Long.MAX_VALUE;
+    for (int round = 0; round < ROUNDS; round++) {
+      long start = THREAD_BEAN.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < ITERATIONS; i++) {
+        assertion.run();
+      }
+      bytesPerCall = Math.min(bytesPerCall, (THREAD_BEAN.getThreadAllocatedBytes(threadId) - start) / ITERATIONS);
+    }
+    reporter.publishEntry(scenario, bytesPerCall + " bytes per assertion");
+    if (baselinesFile != null) {
+      updateBaseline(Path.of(baselinesFile), scenario, bytesPerCall);
+      return;
+    }
+    long threshold = Long.parseLong(baseline) + Long.parseLong(baselines.getProperty("tolerance.bytes"));
+    if (bytesPerCall > threshold) {
+      fail(scenario + ": " + bytesPerCall + " bytes per assertion exceeds the baseline of " + baseline +
+              " by more than the tolerance (threshold: " + threshold + ")");
+    }
+  }
+
+  private static Properties baselines() {
+    Properties properties = new Properties();
+    try (InputStream is = AllocationRegressionTest.class.getResourceAsStream("/allocation-baselines.properties")) {
+      assertNotNull(is, "allocation-baselines.properties is missing");
+      properties.load(is);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return properties;
+  }
+
+  /**
+   * Replaces or adds the value of the scenario in the baselines file, keeping the comments and the other lines intact
+   */
+  private static synchronized void updateBaseline(Path file, String scenario, long bytes) {
+    try {
+      List<String> lines = new ArrayList<>(Files.readAllLines(file));
+      String line = scenario + "=" + bytes;
+      int index = lines.indexOf(lines.stream().filter(l -> l.startsWith(scenario + "=")).findFirst().orElse(null));
+      if (index >= 0) {
+        lines.set(index, line);
+      } else {
+        lines.add(line);
+      }
+      Files.write(file, lines);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
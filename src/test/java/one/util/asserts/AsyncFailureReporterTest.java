@@ -0,0 +1,126 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class AsyncFailureReporterTest {
+  @Test
+  public void testReport() {
+    List<String> messages = new CopyOnWriteArrayList<>();
+    try (AsyncFailureReporter reporter = new AsyncFailureReporter(messages::add)) {
+      assertTrue(reporter.check(() -> 2 + 2 == 4));
+      assertFalse(reporter.check("Math is broken", () -> 2 + 2 == 5));
+    }
+    assertEquals(List.of("""
+            Math is broken
+            2 + 2 -> 4
+            2 + 2 == 5 -> false
+            """), messages);
+  }
+
+  @Test
+  public void testException() {
+    List<String> messages = new CopyOnWriteArrayList<>();
+    AtomicInteger calls = new AtomicInteger();
+    try (AsyncFailureReporter reporter = new AsyncFailureReporter(messages::add)) {
+      assertFalse(reporter.check(() -> calls.incrementAndGet() / 0 == 0));
+    }
+    // Not evaluated again directly
+    assertEquals(1, calls.get());
+    assertEquals(1, messages.size());
+    assertTrue(messages.getFirst().contains("throws java.lang.ArithmeticException: / by zero"));
+  }
+
+  @Test
+  public void testCapturePolicy() throws InterruptedException {
+    assertEquals("""
+            failed
+            list -> [1, 2, 3, 4]
+            list.size() -> 3
+            list.size() == 4 -> false
+            """, reportMutated(CapturePolicy.REFERENCE));
+    assertEquals("""
+            failed
+            list -> [1, 2, 3]
+            list.size() -> 3
+            list.size() == 4 -> false
+            """, reportMutated(CapturePolicy.SNAPSHOT));
+  }
+
+  private static String reportMutated(CapturePolicy policy) throws InterruptedException {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> messages = new CopyOnWriteArrayList<>();
+    List<Integer> list = new ArrayList<>(List.of(1, 2, 3));
+    try (AsyncFailureReporter reporter = new AsyncFailureReporter(message -> {
+      blocked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      messages.add(message);
+    }, 2, policy)) {
+      assertFalse(reporter.check(() -> 2 + 2 == 5));
+      blocked.await();
+      // Rendered after the background thread is released
+      assertFalse(reporter.check(() -> list.size() == 4));
+      list.add(4);
+      release.countDown();
+    }
+    return messages.getLast();
+  }
+
+  @Test
+  public void testSnapshotFormattedByReporter() {
+    Thread caller = Thread.currentThread();
+    List<Thread> formatting = new CopyOnWriteArrayList<>();
+    Object value = new Object() {
+      @Override
+      public String toString() {
+        formatting.add(Thread.currentThread());
+        return "value";
+      }
+    };
+    List<String> messages = new CopyOnWriteArrayList<>();
+    try (AsyncFailureReporter reporter = new AsyncFailureReporter(messages::add, 2, CapturePolicy.SNAPSHOT)) {
+      assertFalse(reporter.check(() -> value.equals("other")));
+    }
+    assertTrue(messages.getFirst().contains("value -> value\n"));
+    assertFalse(formatting.isEmpty());
+    assertFalse(formatting.contains(caller));
+  }
+
+  @Test
+  public void testDrop() throws InterruptedException {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> messages = new CopyOnWriteArrayList<>();
+    try (AsyncFailureReporter reporter = new AsyncFailureReporter(message -> {
+      blocked.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      messages.add(message);
+    }, 1, CapturePolicy.REFERENCE)) {
+      assertFalse(reporter.check(() -> 2 + 2 == 5));
+      blocked.await();
+      // One is queued, others are dropped
+      for (int i = 0; i < 3; i++) {
+        assertFalse(reporter.check(() -> 2 + 2 == 5));
+      }
+      assertEquals(2, reporter.droppedCount());
+      release.countDown();
+    }
+    assertEquals(2, messages.size());
+  }
+}
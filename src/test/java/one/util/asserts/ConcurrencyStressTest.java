@@ -0,0 +1,99 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import static one.util.asserts.RefAsserts.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class ConcurrencyStressTest {
+  private static final int ITERATIONS = 500;
+  private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+  @Test
+  public void testPlatformThreads() throws Exception {
+    stress(Executors.newFixedThreadPool(CORES), CORES * 2);
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    stress(Executors.newVirtualThreadPerTaskExecutor(), CORES * 16);
+  }
+
+  /**
+   * Prints the passing assertion throughput for the growing number of threads. 
+   * Not run by default, use {@code mvn test -Pbenchmark}.
+   */
+  @Test
+  @Tag("benchmark")
+  public void benchmarkScaling() throws Exception {
+    for (boolean virtual : new boolean[]{false, true}) {
+      double single = 0;
+      for (int threads = 1; threads <= CORES; threads *= 2) {
+        double throughput = throughput(threads, virtual);
+        if (threads == 1) {
+          single = throughput;
+        }
+        System.out.printf("%s threads: %3d, throughput: %,12.0f ops/s, scaling efficiency: %.2f%n",
+                virtual ? "virtual " : "platform", threads, throughput, throughput / single / threads);
+      }
+    }
+  }
+
+  private static void stress(ExecutorService executor, int tasks) throws Exception {
+    try (executor) {
+      List<Future<?>> futures = IntStream.range(0, tasks)
+              .<Future<?>>mapToObj(task -> executor.submit(() -> scenario(task))).toList();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+  }
+
+  private static void scenario(int task) {
+    List<Integer> list = List.of(task, task + 1);
+    for (int i = 0; i < ITERATIONS; i++) {
+      int x = i;
+      assertTrue(() -> list.contains(task) && x >= 0);
+      AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(() -> list.size() == x + 3));
+      assertEquals("failed\n" +
+              "list -> [" + task + ", " + (task + 1) + "]\n" +
+              "list.size() -> 2\n" +
+              "x -> " + x + "\n" +
+              "x + 3 -> " + (x + 3) + "\n" +
+              "list.size() == x + 3 -> false\n", error.getMessage());
+    }
+  }
+
+  private static double throughput(int threads, boolean virtual) throws Exception {
+    ThreadFactory factory = virtual ? Thread.ofVirtual().factory() : Thread.ofPlatform().factory();
+    LongAdder operations = new LongAdder();
+    CountDownLatch start = new CountDownLatch(1);
+    long durationNanos = TimeUnit.SECONDS.toNanos(1);
+    try (ExecutorService executor = Executors.newThreadPerTaskExecutor(factory)) {
+      for (int t = 0; t < threads; t++) {
+        int seed = t;
+        executor.submit(() -> {
+          start.await();
+          long deadline = System.nanoTime() + durationNanos;
+          long count = 0;
+          while (System.nanoTime() < deadline) {
+            long current = count;
+            assertTrue(() -> seed + current >= 0);
+            count++;
+          }
+          operations.add(count);
+          return null;
+        });
+      }
+      start.countDown();
+    }
+    return operations.sum() * 1e9 / durationNanos;
+  }
+}
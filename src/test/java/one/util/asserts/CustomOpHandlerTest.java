@@ -0,0 +1,72 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.code.op.CoreOp;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static one.util.asserts.RefAsserts.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Run in a separate JVM which has {@link ConcatHandler} registered via src/test/services
+ */
+public final class CustomOpHandlerTest {
+  /**
+   * Registered handler for string concatenation, which has no built-in support
+   */
+  public static final class ConcatHandler implements CustomOpHandler<CoreOp.ConcatOp> {
+    @Override
+    public Class<CoreOp.ConcatOp> opClass() {
+      return CoreOp.ConcatOp.class;
+    }
+
+    @Override
+    public Object evaluate(CoreOp.ConcatOp op, List<Object> operands) {
+      return String.valueOf(operands.getFirst()) + operands.getLast();
+    }
+
+    @Override
+    public String text(CoreOp.ConcatOp op, List<String> operands) {
+      return "concat(" + operands.getFirst() + ", " + operands.getLast() + ")";
+    }
+  }
+
+  @Test
+  public void testRegistered() {
+    assertInstanceOf(ConcatHandler.class, CustomOpHandlers.forClass(CoreOp.ConcatOp.class));
+  }
+
+  @Test
+  public void testInterpreter() {
+    String x = "b";
+    AssertionCondition condition = () -> ("a" + x).equals("ac");
+    Node model = Interpreter.buildModel(condition.quoted());
+    assertInstanceOf(Node.ValueNode.class, model);
+    Node concat = flatten(model).filter(node -> node.op() instanceof CoreOp.ConcatOp).findFirst().orElseThrow();
+    assertEquals("ab", assertInstanceOf(Node.ValueNode.class, concat).value());
+  }
+
+  @Test
+  public void testDecompiler() {
+    String x = "b";
+    AssertionCondition condition = () -> ("a" + x).equals("ac");
+    CoreOp.ConcatOp concat = flatten(Interpreter.buildModel(condition.quoted()))
+            .map(Node::op).filter(CoreOp.ConcatOp.class::isInstance).map(CoreOp.ConcatOp.class::cast)
+            .findFirst().orElseThrow();
+    assertEquals("concat(\"a\", x)", Decompiler.DEFAULT.opText(concat));
+  }
+
+  @Test
+  public void testMessage() {
+    String x = "b";
+    AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(() -> ("a" + x).equals("ac")));
+    Assertions.assertTrue(error.getMessage().contains("concat(\"a\", x)"), error.getMessage());
+  }
+
+  private static Stream<Node> flatten(Node node) {
+    return Stream.concat(Stream.of(node), node.children().stream().flatMap(CustomOpHandlerTest::flatten));
+  }
+}
@@ -0,0 +1,145 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class DifferTest {
+  @Test
+  public void testScalars() {
+    assertEquals(List.of(), diff(1, 2));
+    assertEquals(List.of(), diff(null, "a"));
+    assertEquals(List.of(), diff("a", List.of("a")));
+  }
+
+  @Test
+  public void testStrings() {
+    assertEquals(List.of(), diff("hello", "hello"));
+    assertEquals(List.of("length 11 vs 11, first difference at index 6", "\"hello world\" vs \"hello World\""),
+            diff("hello world", "hello World"));
+    assertEquals(List.of("length 5 vs 6, first difference at index 5", "\"hello\" vs \"hello!\""),
+            diff("hello", "hello!"));
+    String prefix = "x".repeat(1000);
+    assertEquals(List.of("length 1003 vs 1003, first difference at index 1001",
+                    "...\"" + "x".repeat(19) + "aab\" vs ...\"" + "x".repeat(19) + "acb\""),
+            diff(prefix + "aab", prefix + "acb"));
+  }
+
+  @Test
+  public void testLists() {
+    assertEquals(List.of("[1]: 2 vs 3"), diff(List.of(1, 2, 3), List.of(1, 3, 3)));
+    assertEquals(List.of("size 3 vs 4", "only in right at [3..4): 4"), diff(List.of(1, 2, 3), List.of(1, 2, 3, 4)));
+    assertEquals(List.of("size 4 vs 3", "only in left at [1..2): 2"), diff(List.of(1, 2, 3, 4), List.of(1, 3, 4)));
+    assertEquals(List.of("size 3 vs 4", "only in left at [1..2): 2", "only in right at [1..3): 5, 6"),
+            diff(new LinkedList<>(List.of(1, 2, 3)), List.of(1, 5, 6, 3)));
+  }
+
+  @Test
+  public void testHugeLists() {
+    List<Integer> left = IntStream.range(0, 1_000_000).boxed().toList();
+    List<Integer> right = new ArrayList<>(left);
+    right.add(500_000, -1);
+    assertEquals(List.of("size 1000000 vs 1000001", "only in right at [500000..500001): -1"), diff(left, right));
+    right.remove(500_000);
+    for (int i = 0; i < 1_000_000; i += 1000) {
+      right.set(i, -i);
+    }
+    assertEquals(List.of("[1000]: 1000 vs -1000", "[2000]: 2000 vs -2000", "[3000]: 3000 vs -3000",
+            "[4000]: 4000 vs -4000", "[5000]: 5000 vs -5000", "... 999 elements differ in total"), diff(left, right));
+  }
+
+  @Test
+  public void testArrays() {
+    assertEquals(List.of("[2]: 3 vs 4"), diff(new int[]{1, 2, 3}, new int[]{1, 2, 4}));
+    assertEquals(List.of("length 2 vs 3", "only in right at [0..1): 0.0"), diff(new double[]{1, 2}, new double[]{0, 1, 2}));
+    assertEquals(List.of("[0]: \"a\" vs \"b\""), diff(new String[]{"a"}, new String[]{"b"}));
+  }
+
+  @Test
+  public void testMaps() {
+    assertEquals(List.of("only in left: 2", "only in right: 3", "[1]: \"a\" vs \"b\""),
+            diff(new TreeMap<>(Map.of(1, "a", 2, "b")), new TreeMap<>(Map.of(1, "b", 3, "c"))));
+    assertEquals(List.of("only in right: 3"), diff(Set.of(1, 2), Set.of(1, 2, 3)));
+  }
+
+  record Address(String city, String street) {}
+  
+  record Customer(String name, Address address) {}
+  
+  record Order(int id, Customer customer, List<Integer> items) {}
+
+  @Test
+  public void testRecords() {
+    Order left = new Order(1, new Customer("John", new Address("Berlin", "Main st.")), List.of(1, 2));
+    Order right = new Order(1, new Customer("John", new Address("Munich", "Main st.")), List.of(1, 3));
+    assertEquals(List.of(".customer.address.city: \"Berlin\" vs \"Munich\"", ".items[1]: 2 vs 3"), diff(left, right));
+    assertEquals(List.of(".id: 1 vs 2"), diff(new Order(1, null, List.of()), new Order(2, null, List.of())));
+  }
+
+  static final AtomicInteger TREE_ACCESSES = new AtomicInteger();
+
+  record Tree(int value, List<Tree> children) {
+    @Override
+    public List<Tree> children() {
+      TREE_ACCESSES.incrementAndGet();
+      return children;
+    }
+  }
+
+  private static Tree tree(int depth, int leaf) {
+    if (depth == 0) return new Tree(leaf, List.of());
+    Tree child = tree(depth - 1, leaf);
+    return new Tree(depth, Collections.nCopies(6, child));
+  }
+
+  @Test
+  public void testDeepGraph() {
+    TREE_ACCESSES.set(0);
+    List<String> lines = diff(tree(10, 1), tree(10, 2));
+    assertTrue(lines.size() <= 30);
+    assertTrue(TREE_ACCESSES.get() < 10_000, "Accessed " + TREE_ACCESSES.get() + " times");
+  }
+
+  public static final class Bean {
+    private final String name;
+    private Bean next;
+
+    Bean(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Bean getNext() {
+      return next;
+    }
+
+    public boolean isLast() {
+      return next == null;
+    }
+  }
+
+  @Test
+  public void testCyclicBeans() {
+    Bean left = new Bean("a");
+    left.next = new Bean("b");
+    left.next.next = left;
+    Bean right = new Bean("a");
+    right.next = new Bean("c");
+    right.next.next = right;
+    assertEquals(List.of(".next.name: \"b\" vs \"c\""), diff(left, right));
+    right.next.next = new Bean("a");
+    assertEquals(List.of(".next.name: \"b\" vs \"c\"", ".next.next: (cycle) vs " + right.next.next), diff(left, right));
+  }
+
+  private static List<String> diff(Object left, Object right) {
+    return Differ.DEFAULT.diff(left, right);
+  }
+}
@@ -0,0 +1,99 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.code.Op;
+import java.util.ArrayList;
+import java.util.List;
+
+import static one.util.asserts.RefAsserts.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Run in a separate JVM which has {@link RecordingListener} registered via src/test/services,
+ * so the rest of the tests are evaluated without a listener
+ */
+public final class EvaluationListenerTest {
+  /**
+   * Registered listener which records the events of the current thread inside {@link #record(Runnable)} only
+   */
+  public static final class RecordingListener implements EvaluationListener {
+    private static final ThreadLocal<List<String>> EVENTS = new ThreadLocal<>();
+
+    @Override
+    public void valueEvaluated(Op op, Object value, long nanos) {
+      List<String> events = EVENTS.get();
+      if (events != null) {
+        events.add("value " + Decompiler.DEFAULT.opText(op) + " = " + value);
+      }
+    }
+
+    @Override
+    public void exceptionThrown(Op op, Throwable throwable, long nanos) {
+      List<String> events = EVENTS.get();
+      if (events != null) {
+        events.add("exception " + Decompiler.DEFAULT.opText(op) + " " + throwable.getClass().getSimpleName());
+      }
+    }
+
+    @Override
+    public void unsupportedOp(Op op) {
+      List<String> events = EVENTS.get();
+      if (events != null) {
+        events.add("unsupported " + op.getClass().getSimpleName());
+      }
+    }
+
+    @Override
+    public void fallbackTaken(AssertionCondition condition, boolean result) {
+      List<String> events = EVENTS.get();
+      if (events != null) {
+        events.add("fallback " + result);
+      }
+    }
+
+    static List<String> record(Runnable action) {
+      List<String> events = new ArrayList<>();
+      EVENTS.set(events);
+      try {
+        action.run();
+      } finally {
+        EVENTS.remove();
+      }
+      return events;
+    }
+  }
+
+  @Test
+  public void testRegistered() {
+    assertInstanceOf(RecordingListener.class, Listeners.LISTENER);
+  }
+
+  @Test
+  public void testListener() {
+    assertEquals(List.of("value 2 = 2", "value 2 = 2", "value 2 + 2 = 4", "value 4 = 4", "value 2 + 2 == 4 = true"),
+            RecordingListener.record(() -> assertTrue(() -> 2 + 2 == 4)));
+    assertEquals(List.of("value 2 = 2", "value 2 = 2", "value 2 + 2 = 4", "value 0 = 0", "exception (2 + 2) / 0 ArithmeticException", 
+                    "value 1 = 1"),
+            RecordingListener.record(() -> assertThrows(AssertionError.class, () -> assertTrue(() -> (2 + 2) / 0 == 1))));
+    assertEquals(List.of("unsupported VarLoadOp", "value 2 = 2", "fallback true"),
+            RecordingListener.record(() -> assertTrue(() -> {
+              int x = 10;
+              return x > 2;
+            })));
+  }
+
+  @Test
+  public void testOtherThread() {
+    List<String> events = RecordingListener.record(() -> {
+      Thread thread = new Thread(() -> assertTrue(() -> 2 + 2 == 4));
+      thread.start();
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    assertEquals(List.of(), events);
+  }
+}
@@ -0,0 +1,105 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class FailureRecorderTest {
+  @Test
+  public void testRecord() throws IOException {
+    Path file = Files.createTempFile("failures", ".bin");
+    try {
+      try (FailureRecorder recorder = new FailureRecorder(file, 2, 1024)) {
+        RefAsserts.setFailureRecorder(recorder);
+        try {
+          String str = "hello";
+          for (int i = 0; i < 3; i++) {
+            int value = i;
+            assertThrows(AssertionError.class, () -> RefAsserts.assertTrue(() -> str.length() + value == 10));
+          }
+          assertThrows(AssertionError.class, () -> RefAsserts.assertTrue(() -> 1L / 0L == 0L));
+        } finally {
+          RefAsserts.setFailureRecorder(null);
+        }
+      }
+      List<String> entries = FailureRecorder.readAll(file);
+      assertEquals(2, entries.size());
+      String site = FailureRecorderTest.class.getName() + ":";
+      assertTrue(entries.get(0).startsWith("#3 "));
+      assertTrue(entries.get(0).contains(" " + site));
+      assertTrue(entries.get(0).endsWith("""
+              str -> "hello"
+              str.length() -> 5
+              value -> 2
+              str.length() + value -> 7
+              str.length() + value == 10 -> false
+              """));
+      assertTrue(entries.get(1).startsWith("#4 "));
+      assertTrue(entries.get(1).endsWith("""
+              1L / 0L -> throws java.lang.ArithmeticException: / by zero
+              1L / 0L == 0L -> throws java.lang.ArithmeticException: / by zero
+              """));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testObjectValue() throws IOException {
+    Path file = Files.createTempFile("failures", ".bin");
+    try {
+      try (FailureRecorder recorder = new FailureRecorder(file, 2, 1024)) {
+        RefAsserts.setFailureRecorder(recorder);
+        try {
+          Object obj = new Object() {
+            @Override
+            public String toString() {
+              throw new AssertionError("must not be called while recording");
+            }
+          };
+          assertThrows(AssertionError.class, () -> RefAsserts.assertTrue(() -> obj.hashCode() == obj.hashCode() + 1));
+        } finally {
+          RefAsserts.setFailureRecorder(null);
+        }
+      }
+      List<String> entries = FailureRecorder.readAll(file);
+      assertEquals(1, entries.size());
+      assertTrue(entries.getFirst().contains("\nobj -> " + FailureRecorderTest.class.getName() + "$1@"));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testCrashedWriter() throws IOException {
+    Path file = Files.createTempFile("failures", ".bin");
+    try {
+      new FailureRecorder(file, 1, 1024).close();
+      // The only slot is left being written, as if the process crashed
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        channel.write(ByteBuffer.allocate(8).putLong(0, -1L), 64);
+      }
+      try (FailureRecorder recorder = new FailureRecorder(file, 1, 1024)) {
+        RefAsserts.setFailureRecorder(recorder);
+        try {
+          assertThrows(AssertionError.class, () -> RefAsserts.assertTrue(() -> 2 + 2 == 5));
+        } finally {
+          RefAsserts.setFailureRecorder(null);
+        }
+      }
+      List<String> entries = FailureRecorder.readAll(file);
+      assertEquals(1, entries.size());
+      assertTrue(entries.getFirst().endsWith("2 + 2 == 5 -> false\n"));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
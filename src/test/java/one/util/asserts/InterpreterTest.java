@@ -2,12 +2,20 @@ package one.util.asserts;
 
 import org.junit.jupiter.api.Test;
 
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.code.Quoted;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public final class InterpreterTest {
   @Test
@@ -137,12 +145,21 @@ public final class InterpreterTest {
     doTest(() -> x[1] == x.length, """
             x -> [1, 2, 3]
             x[1] -> 2
-            x -> [1, 2, 3]
             x.length -> 3
             x[1] == x.length -> false
             """);
   }
   
+  @Test
+  public void testArrayIndexOutOfBounds() {
+    int[] x = {1, 2, 3};
+    doTest(() -> x[3] == 0, """
+            x -> [1, 2, 3]
+            x[3] -> throws java.lang.ArrayIndexOutOfBoundsException: Index 3 out of bounds for length 3
+            x[3] == 0 -> throws java.lang.ArrayIndexOutOfBoundsException: Index 3 out of bounds for length 3
+            """);
+  }
+
   @Test
   public void testPrimitiveWidening() {
     doTest(() -> 2.0 + 2 == 4, """
@@ -173,7 +190,6 @@ public final class InterpreterTest {
       doTest(() -> x == y, """
               this -> [1; 3]
               this.x -> 1
-              this -> [1; 3]
               this.y -> 3
               this.x == this.y -> false
               """);
@@ -191,7 +207,6 @@ public final class InterpreterTest {
     doTest(() -> point.x == point.y - 2, """
             point -> [1; 3]
             point.x -> 1
-            point -> [1; 3]
             point.y -> 3
             point.y - 2 -> 1
             point.x == point.y - 2 -> true
@@ -205,6 +220,34 @@ public final class InterpreterTest {
             "List.of(\"a\",\"b\",\"c\",\"d\").contains(\"e\") -> false\n");
   }
   
+  @Test
+  public void testRepeatedValues() {
+    List<Integer> list = List.of(1, 2, 3);
+    List<Integer> alias = list;
+    doTest(() -> list.contains(2) && alias.size() + list.size() == 7, """
+            list -> [1, 2, 3]
+            list.contains(2) -> true
+            alias -> (same as list)
+            alias.size() -> 3
+            list.size() -> 3
+            alias.size() + list.size() -> 6
+            alias.size() + list.size() == 7 -> false
+            list.contains(2) && alias.size() + list.size() == 7 -> false
+            """);
+  }
+  
+  @Test
+  public void testEqualsDiff() {
+    List<Integer> expected = List.of(1, 2, 3);
+    List<Integer> actual = List.of(1, 5, 3);
+    doTest(() -> expected.equals(actual), """
+            expected -> [1, 2, 3]
+            actual -> [1, 5, 3]
+            expected.equals(actual) -> false
+              [1]: 2 vs 5
+            """);
+  }
+  
   @Test
   public void testConditionalAndOr() {
     doTest(() -> 2 < 3 && 4 > 5, """
@@ -240,7 +283,7 @@ public final class InterpreterTest {
     Object obj2 = new LocalClass(1);
     doTest(() -> ((LocalClass) obj2).x() == 1, """
             obj2 -> LocalClass[x=1]
-            (LocalClass)obj2 -> LocalClass[x=1]
+            (LocalClass)obj2 -> (same as obj2)
             ((LocalClass)obj2).x() -> 1
             ((LocalClass)obj2).x() == 1 -> true
             """);
@@ -308,7 +351,7 @@ public final class InterpreterTest {
   public void testMethodRef() {
     doTest(() -> Optional.of("").filter(String::isEmpty).isPresent(), """
             Optional.of("") -> Optional[]
-            Optional.of("").filter(String::isEmpty) -> Optional[]
+            Optional.of("").filter(String::isEmpty) -> (same as Optional.of(""))
             Optional.of("").filter(String::isEmpty).isPresent() -> true
             """);
     doTest(() -> Optional.of("xyz").filter(String::isEmpty).isPresent(), """
@@ -329,6 +372,101 @@ public final class InterpreterTest {
             """);
   }
   
+  @Test
+  public void testMethodRefReused() {
+    AssertionCondition condition = () -> Optional.of("").filter(String::isEmpty).isPresent();
+    assertSame(methodRefInstance(condition), methodRefInstance(condition));
+  }
+
+  private static Object methodRefInstance(AssertionCondition condition) {
+    Node filter = Interpreter.buildModel(condition.quoted()).children().getFirst();
+    return ((Node.ValueNode) filter.children().getLast()).value();
+  }
+
+  @Test
+  public void testConstantFolding() {
+    String str = "hello";
+    AssertionCondition condition = () -> str.length() + (1 << 3) > Integer.MAX_VALUE - 10;
+    Quoted quoted = condition.quoted();
+    ConstantFolder folder = ConstantFolder.forSite(condition.getClass(), quoted.op());
+    Node first = Interpreter.buildModel(quoted, Resolver.DEFAULT, null, folder);
+    Node second = Interpreter.buildModel(quoted, Resolver.DEFAULT, null, folder);
+    // str.length() + (1 << 3) is not invariant
+    assertNotSame(first.children().getFirst(), second.children().getFirst());
+    // 1 << 3
+    assertSame(first.children().getFirst().children().getLast(), second.children().getFirst().children().getLast());
+    // Integer.MAX_VALUE - 10
+    assertSame(first.children().getLast(), second.children().getLast());
+    assertEquals(DefaultAssertionFormatter.DEFAULT.formatAssertion(first), 
+            DefaultAssertionFormatter.DEFAULT.formatAssertion(second));
+  }
+
+  @Test
+  public void testConstantFoldingWithTiming() {
+    int x = 1;
+    AssertionCondition condition = () -> x < Integer.MAX_VALUE - 10;
+    Quoted quoted = condition.quoted();
+    ConstantFolder folder = ConstantFolder.forSite(condition.getClass(), quoted.op());
+    Interpreter.setTiming(true);
+    try {
+      Node first = Interpreter.buildModel(quoted, Resolver.DEFAULT, null, folder);
+      Node second = Interpreter.buildModel(quoted, Resolver.DEFAULT, null, folder);
+      // Folded node is stored without timing, as it's not evaluated again
+      assertSame(first.children().getLast(), second.children().getLast());
+      assertEquals(-1, ((Node.ValueNode) second.children().getLast()).nanos());
+      assertTrue(((Node.ValueNode) second).nanos() >= 0);
+    } finally {
+      Interpreter.setTiming(false);
+    }
+  }
+
+  static final List<Integer> MUTABLE = new ArrayList<>();
+  static final List<Integer> OTHER = new ArrayList<>();
+  static final TimeUnit UNIT = TimeUnit.SECONDS;
+
+  @Test
+  public void testConstantFoldingFieldTypes() {
+    // The lists may be modified, so their comparison is not folded
+    AssertionCondition mutable = () -> MUTABLE == OTHER;
+    assertFalse(ConstantFolder.forSite(mutable.getClass(), mutable.quoted().op()).hasInvariants());
+    AssertionCondition immutable = () -> UNIT == TimeUnit.SECONDS;
+    Quoted quoted = immutable.quoted();
+    ConstantFolder folder = ConstantFolder.forSite(immutable.getClass(), quoted.op());
+    assertSame(Interpreter.buildModel(quoted, Resolver.DEFAULT, null, folder),
+            Interpreter.buildModel(quoted, Resolver.DEFAULT, null, folder));
+  }
+
+  private static int secret = 40;
+
+  private static int twice(int value) {
+    return value * 2;
+  }
+
+  @Test
+  public void testPrivateMembers() {
+    AssertionCondition condition = () -> secret + twice(1) == 0;
+    assertInstanceOf(Node.UnsupportedNode.class, Interpreter.buildModel(condition.quoted()));
+    Node model = Interpreter.buildModel(condition.quoted(), Resolver.forClass(condition.getClass()), null, null);
+    assertEquals("""
+            InterpreterTest.secret -> 40
+            InterpreterTest.twice(1) -> 2
+            InterpreterTest.secret + InterpreterTest.twice(1) -> 42
+            InterpreterTest.secret + InterpreterTest.twice(1) == 0 -> false
+            """, DefaultAssertionFormatter.DEFAULT.formatAssertion(model));
+  }
+
+  @Test
+  public void testRegisteredLookup() {
+    AssertionCondition condition = () -> secret == 40;
+    Resolver resolver = Resolver.forClass(condition.getClass());
+    assertSame(Resolver.forClass(InterpreterTest.class), resolver);
+    assertSame(InterpreterTest.class, resolver.lookup().lookupClass());
+    // Resolver cached for the lambda class is replaced as well
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    Resolver.register(lookup);
+    assertSame(lookup, Resolver.forClass(condition.getClass()).lookup());
+  }
+
   @Test
   public void testUnsupported() {
     doTest(() -> {
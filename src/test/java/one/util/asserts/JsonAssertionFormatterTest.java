@@ -0,0 +1,71 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class JsonAssertionFormatterTest {
+  @Test
+  public void testValue() {
+    assertEquals("""
+            {"op":"2 + 2 == 5","kind":"value","value":"false","type":"java.lang.Boolean","children":[\
+            {"op":"2 + 2","kind":"value","value":"4","type":"java.lang.Integer","children":[]}]}""",
+            format(() -> 2 + 2 == 5));
+  }
+
+  @Test
+  public void testException() {
+    assertEquals("""
+            {"op":"(2 + 2) / 0 == 1","kind":"exception","exception":"java.lang.ArithmeticException",\
+            "message":"/ by zero","children":[{"op":"(2 + 2) / 0","kind":"exception",\
+            "exception":"java.lang.ArithmeticException","message":"/ by zero","children":[\
+            {"op":"2 + 2","kind":"value","value":"4","type":"java.lang.Integer","children":[]}]}]}""",
+            format(() -> (2 + 2) / 0 == 1));
+  }
+
+  @Test
+  public void testStream() throws IOException {
+    String str = "a\"b\n";
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    new JsonAssertionFormatter().write(Interpreter.buildModel(((AssertionCondition) () -> str.isEmpty()).quoted()), output);
+    assertEquals("""
+            {"op":"str.isEmpty()","kind":"value","value":"false","type":"java.lang.Boolean","children":[\
+            {"op":"str","kind":"value","value":"\\"a\\\\\\"b\\\\n\\"","type":"java.lang.String","children":[]}]}""",
+            output.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testAssertionError() throws IOException {
+    StringWriter writer = new StringWriter();
+    for (int i = 4; i <= 5; i++) {
+      int x = i;
+      RefAssertionError error = assertThrows(RefAssertionError.class, () -> RefAsserts.assertTrue(() -> x * 2 == 3));
+      error.writeJson(writer);
+      writer.write('\n');
+    }
+    assertEquals("""
+            {"op":"x * 2 == 3","kind":"value","value":"false","type":"java.lang.Boolean","children":[\
+            {"op":"x * 2","kind":"value","value":"8","type":"java.lang.Integer","children":[\
+            {"op":"x","kind":"value","value":"4","type":"java.lang.Integer","children":[]}]}]}
+            {"op":"x * 2 == 3","kind":"value","value":"false","type":"java.lang.Boolean","children":[\
+            {"op":"x * 2","kind":"value","value":"10","type":"java.lang.Integer","children":[\
+            {"op":"x","kind":"value","value":"5","type":"java.lang.Integer","children":[]}]}]}
+            """, writer.toString());
+    // Rendered when the message is requested, so the trace is released
+    RefAssertionError rendered = assertThrows(RefAssertionError.class, () -> RefAsserts.assertTrue(() -> 2 + 2 == 5));
+    rendered.getMessage();
+    StringWriter renderedWriter = new StringWriter();
+    rendered.writeJson(renderedWriter);
+    assertEquals(format(() -> 2 + 2 == 5), renderedWriter.toString());
+  }
+
+  private static String format(AssertionCondition condition) {
+    return new JsonAssertionFormatter().formatAssertion(Interpreter.buildModel(condition.quoted()));
+  }
+}
@@ -3,7 +3,24 @@ package one.util.asserts;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.code.Location;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static one.util.asserts.RefAsserts.assertTrue;
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,4 +47,223 @@ public final class RefAssertsTest {
             2 + 2 == 5 -> false
             """, errorWithMessage.getMessage());
   }
+
+  @Test
+  public void testDetach() {
+    List<Integer> list = new ArrayList<>(List.of(1, 2, 3));
+    RefAssertionError error = assertThrows(RefAssertionError.class, () -> assertTrue(() -> list.size() == 4));
+    list.add(4);
+    assertEquals("""
+            failed
+            list -> [1, 2, 3]
+            list.size() -> 3
+            list.size() == 4 -> false
+            """, error.detach().getMessage());
+    String actual = "Hello, world!".repeat(10);
+    AssertionCondition condition = () -> actual.equals("Hello, World!".repeat(10));
+    AssertionError diffError = assertThrows(AssertionError.class, () -> assertTrue(condition));
+    assertEquals("failed\n" + DefaultAssertionFormatter.DEFAULT.formatAssertion(Interpreter.buildModel(condition.quoted())),
+            diffError.getMessage());
+  }
+
+  @Test
+  public void testSnapshotDiff() {
+    List<Integer> expected = IntStream.range(0, 200).boxed().toList();
+    List<Integer> actual = new ArrayList<>(expected);
+    actual.set(150, -1);
+    AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(() -> expected.equals(actual)));
+    // Diffed at evaluation time, beyond the copied elements
+    actual.set(150, 150);
+    String message = error.getMessage();
+    assertTrue(() -> message.endsWith("expected.equals(actual) -> false\n  [150]: 150 vs -1\n"));
+    List<Integer> longer = IntStream.range(0, 250).boxed().toList();
+    AssertionError sizeError = assertThrows(AssertionError.class, () -> assertTrue(() -> expected.equals(longer)));
+    assertTrue(() -> sizeError.getMessage().contains("\n  size 200 vs 250\n"));
+  }
+
+  @Test
+  public void testAllMatch() {
+    RefAsserts.assertAllMatch(List.of("a", "bb"), s -> s.length() < 5);
+    AssertionError error = assertThrows(AssertionError.class,
+            () -> RefAsserts.assertAllMatch(new String[]{"a", "bb", "hello!", "ccc"}, s -> s.length() < 5));
+    assertEquals("""
+            1 of 4 elements do not match
+            element [2]: "hello!"
+            s -> "hello!"
+            s.length() -> 6
+            s.length() < 5 -> false
+            """, error.getMessage());
+    AssertionError bulkError = assertThrows(AssertionError.class,
+            () -> RefAsserts.assertAllMatch(IntStream.range(0, 100_000).mapToObj(i -> i % 1000 == 0 ? "long string" : "a"),
+                    s -> s.length() < 5));
+    String message = bulkError.getMessage();
+    assertTrue(() -> message.startsWith("100 of 100000 elements do not match\nelement [0]: \"long string\"\n"));
+    assertTrue(() -> message.contains("element [1000]: "));
+    assertTrue(() -> message.contains("element [2000]: "));
+    assertTrue(() -> message.endsWith("\n... and 97 more"));
+    assertFalse(message.contains("\n\n"));
+    AssertionError parallelError = assertThrows(AssertionError.class,
+            () -> RefAsserts.assertAllMatch(IntStream.range(0, 100_000).parallel()
+                    .mapToObj(i -> i % 1000 == 0 ? "long string" : "a"), s -> s.length() < 5));
+    assertEquals(message, parallelError.getMessage());
+  }
+
+  @Test
+  public void testAllMatchPrimitive() {
+    RefAsserts.assertAllMatch(new int[]{1, 2, 3}, x -> x > 0);
+    RefAsserts.assertAllMatch(new long[]{1, 2, 3}, x -> x > 0);
+    RefAsserts.assertAllMatch(new double[]{1, 2, 3}, x -> x > 0);
+    AssertionError error = assertThrows(AssertionError.class,
+            () -> RefAsserts.assertAllMatch(new int[]{1, -5, 3}, x -> x > 0));
+    assertEquals("""
+            1 of 3 elements do not match
+            element [1]: -5
+            x -> -5
+            x > 0 -> false
+            """, error.getMessage());
+    double[] data = new double[1_000_000];
+    data[123_456] = Double.NaN;
+    AssertionError bulkError = assertThrows(AssertionError.class,
+            () -> RefAsserts.assertAllMatch(data, x -> !Double.isNaN(x)));
+    assertTrue(() -> bulkError.getMessage().startsWith("1 of 1000000 elements do not match\nelement [123456]: NaN\n"));
+  }
+
+  static int slow(int value) {
+    try {
+      Thread.sleep(100);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    return value;
+  }
+
+  @Test
+  public void testTiming() {
+    RefAsserts.setTiming(true);
+    try {
+      AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(() -> slow(1) == 0));
+      String message = error.getMessage();
+      assertTrue(() -> message.matches("""
+              failed
+              RefAssertsTest\\.slow\\(1\\) -> 1 \\(\\d{3,} ms\\)
+              RefAssertsTest\\.slow\\(1\\) == 0 -> false \\(\\d+ (ns|\u00b5s|ms)\\)
+              """));
+    } finally {
+      RefAsserts.setTiming(false);
+    }
+  }
+
+  @Test
+  public void testEvaluationBudget() {
+    RefAsserts.setEvaluationBudget(EvaluationBudget.ofTime(Duration.ofMillis(50)));
+    try {
+      AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(() -> slow(1) + slow(2) == 0));
+      assertEquals("""
+              failed
+              RefAssertsTest.slow(1) -> 1
+              RefAssertsTest.slow(2) -> not evaluated
+              RefAssertsTest.slow(1) + RefAssertsTest.slow(2) -> not evaluated
+              RefAssertsTest.slow(1) + RefAssertsTest.slow(2) == 0 -> not evaluated
+              (evaluation budget exhausted: some subexpressions were not evaluated or formatted)
+              """, error.getMessage());
+      assertTrue(() -> slow(1) + slow(2) == 3);
+    } finally {
+      RefAsserts.setEvaluationBudget(EvaluationBudget.UNLIMITED);
+    }
+  }
+
+  @Test
+  public void testUnlimitedBudget() {
+    // Nothing is tracked by default
+    assertNull(EvaluationBudget.DEFAULT.start());
+    assertNull(EvaluationBudget.ofTime(Duration.ofSeconds(Long.MAX_VALUE)).start());
+    EvaluationBudget.Tracker tracker = EvaluationBudget.ofTime(Duration.ofNanos(Long.MAX_VALUE - 1)).start();
+    assertNotNull(tracker);
+    assertFalse(tracker.exhausted());
+  }
+
+  @Test
+  public void testJfrEvents() throws IOException {
+    Path file = Files.createTempFile("asserts", ".jfr");
+    try {
+      try (Recording recording = new Recording()) {
+        recording.enable("one.util.asserts.AssertionPhase");
+        recording.start();
+        AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(() -> 2 + 2 == 5));
+        // The message is formatted on request
+        assertNotNull(error.getMessage());
+        recording.stop();
+        recording.dump(file);
+      }
+      List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+              .sorted(Comparator.comparing(RecordedEvent::getStartTime)).toList();
+      assertEquals(List.of("model", "interpretation", "decompilation", "snapshot", "formatting"),
+              events.stream().map(e -> e.getString("phase")).toList());
+      for (RecordedEvent event : events) {
+        assertEquals("fail", event.getString("outcome"));
+        assertEquals(5, event.getInt("nodeCount"));
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testMetrics() throws JMException {
+    AssertionCondition condition = () -> 2 + 2 == 4;
+    for (int i = 0; i < 3; i++) {
+      assertTrue(condition);
+    }
+    AssertionCondition failing = () -> 2 + 2 == 5;
+    AssertionError error = assertThrows(AssertionError.class, () -> assertTrue(failing));
+    assertNotNull(error.getMessage());
+    List<AssertionMetrics.SiteSnapshot> snapshot = AssertionMetrics.snapshot();
+    assertTrue(() -> snapshot.stream().noneMatch(s -> s.site().contains("$$Lambda")));
+    AssertionMetrics.SiteSnapshot passed = snapshot.stream()
+            .filter(s -> s.site().equals(siteName(condition))).findFirst().orElseThrow();
+    assertEquals(3, passed.evaluations());
+    assertEquals(0, passed.failures());
+    assertEquals(0, passed.fallbacks());
+    assertEquals(3, LongStream.of(passed.evaluationLatency()).sum());
+    assertEquals(0, LongStream.of(passed.formattingLatency()).sum());
+    AssertionMetrics.SiteSnapshot failed = snapshot.stream()
+            .filter(s -> s.site().equals(siteName(failing))).findFirst().orElseThrow();
+    assertEquals(1, failed.evaluations());
+    assertEquals(1, failed.failures());
+    assertEquals(1, LongStream.of(failed.formattingLatency()).sum());
+    AssertionMetrics.registerMBean();
+    ObjectName name = new ObjectName(AssertionMetrics.OBJECT_NAME);
+    Assertions.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    Assertions.assertNotNull(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Evaluations"));
+    Assertions.assertNotNull(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EvaluationLatency"));
+  }
+
+  /**
+   * @return expected metrics site name: the lambdas of this file are nested in this class
+   */
+  private static String siteName(AssertionCondition condition) {
+    Location location = condition.quoted().op().location();
+    return RefAssertsTest.class.getName() + ":" + location.line() + ":" + location.column();
+  }
+
+  static final class WarmUpTarget {
+    static int answer() {
+      return 42;
+    }
+
+    static void check() {
+      assertTrue(() -> answer() == 42);
+    }
+  }
+
+  @Test
+  public void testWarmUp() throws Exception {
+    RefAsserts.warmUp(WarmUpTarget.class).get(10, TimeUnit.SECONDS);
+    WarmUpTarget.check();
+    String name = siteName(WarmUp.instantiateConditions(WarmUpTarget.class).getFirst());
+    AssertionMetrics.SiteSnapshot site = AssertionMetrics.snapshot().stream()
+            .filter(s -> s.site().equals(name)).findFirst().orElseThrow();
+    assertEquals(1, site.cacheHits());
+    assertEquals(0, site.cacheMisses());
+  }
 }
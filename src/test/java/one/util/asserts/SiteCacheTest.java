@@ -0,0 +1,109 @@
+package one.util.asserts;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.code.Op;
+import java.lang.reflect.code.Quoted;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public final class SiteCacheTest {
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path file = Files.createTempFile("sites", ".bin");
+    try {
+      int x = 2;
+      AssertionCondition condition = () -> x + x == 5;
+      Quoted quoted = condition.quoted();
+      Node model = Interpreter.buildModel(quoted);
+
+      SiteCache cache = SiteCache.open(file);
+      SiteCache.Site site = cache.site(condition.getClass(), quoted);
+      assertNotNull(site);
+      assertFalse(site.isUnsupported(quoted));
+      Map<Op, String> texts = site.decompile(quoted.op(), model, DefaultAssertionFormatter.DEFAULT);
+      cache.save();
+
+      SiteCache reopened = SiteCache.open(file);
+      SiteCache.Site cached = reopened.site(condition.getClass(), quoted);
+      assertNotNull(cached);
+      assertFalse(cached.isUnsupported(quoted));
+      assertEquals(texts, cached.decompile(quoted.op(), model, DefaultAssertionFormatter.DEFAULT));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void testSupport() throws IOException {
+    Path file = Files.createTempFile("sites", ".bin");
+    try {
+      SiteCache cache = SiteCache.open(file);
+      int x = 1;
+      // No handler for switch expressions: never supported
+      AssertionCondition switchCondition = () -> switch (x) {
+        case 1 -> true;
+        default -> false;
+      };
+      Quoted switchQuoted = switchCondition.quoted();
+      assertTrue(cache.site(switchCondition.getClass(), switchQuoted).isUnsupported(switchQuoted));
+      // Unsupported op in the branch which is not taken
+      AssertionCondition branchCondition = () -> x == 2 && switch (x) {
+        case 1 -> true;
+        default -> false;
+      };
+      Quoted branchQuoted = branchCondition.quoted();
+      assertInstanceOf(Node.ValueNode.class, Interpreter.buildModel(branchQuoted));
+      assertFalse(cache.site(branchCondition.getClass(), branchQuoted).isUnsupported(branchQuoted));
+      // Unsupported by the interpreter at run time, but has a supported shape
+      AssertionCondition localCondition = () -> {
+        int y = 10;
+        return y > 2;
+      };
+      Quoted localQuoted = localCondition.quoted();
+      assertInstanceOf(Node.UnsupportedNode.class, Interpreter.buildModel(localQuoted));
+      assertFalse(cache.site(localCondition.getClass(), localQuoted).isUnsupported(localQuoted));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  static final class PrepareTarget {
+    static AssertionCondition condition(int x) {
+      return () -> x + 2 == 5;
+    }
+  }
+
+  @Test
+  public void testPrepare() throws IOException {
+    Path file = Files.createTempFile("sites", ".bin");
+    try {
+      // Analyzed without evaluating the code which declares the condition
+      List<AssertionCondition> conditions = WarmUp.instantiateConditions(PrepareTarget.class);
+      assertEquals(1, conditions.size());
+      Quoted prepared = conditions.getFirst().quoted();
+      SiteCache cache = SiteCache.open(file);
+      cache.site(conditions.getFirst().getClass(), prepared).prepare(prepared);
+      cache.save();
+      byte[] content = Files.readAllBytes(file);
+
+      AssertionCondition condition = PrepareTarget.condition(3);
+      Quoted quoted = condition.quoted();
+      SiteCache reopened = SiteCache.open(file);
+      SiteCache.Site site = reopened.site(condition.getClass(), quoted);
+      assertFalse(site.isUnsupported(quoted));
+      Map<Op, String> texts = site.decompile(quoted.op(), Interpreter.buildModel(quoted), DefaultAssertionFormatter.DEFAULT);
+      assertTrue(texts.containsValue("x + 2 == 5"));
+      // Nothing to update: the verdict and the texts are read from the prepared file
+      reopened.save();
+      assertArrayEquals(content, Files.readAllBytes(file));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}